@@ -0,0 +1,216 @@
+package fa.bench;
+
+import fa.State;
+import fa.dfa.CompiledDFA;
+import fa.dfa.DFA;
+import fa.dfa.PackedDFA;
+import fa.nfa.NFA;
+import fa.nfa.NFAState;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmarks for subset construction, serial, parallel and incremental,
+ * eClosure, combineSets and matching.
+ * Every case is run for a number of warmup iterations and then measured,
+ * reporting the mean time per operation, the bytes allocated per operation
+ * and, for matching, the strings matched per second.
+ * <p>
+ * Options are given as name=value pairs, lists are comma separated:
+ * states, abc (alphabet sizes), eps (empty transitions per state),
+ * trans (symbol transitions per state), nth (n-th from last family),
+ * strings, length, warmup, iterations and seed.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public class Benchmarks {
+    //results are folded into this so the JIT cannot drop the measured work
+    private static long sink;
+
+    private final int warmup;
+    private final int iterations;
+
+    private Benchmarks(int warmup, int iterations) {
+        this.warmup = warmup;
+        this.iterations = iterations;
+    }
+
+    /**
+     * @param args name=value options, see the class comment
+     */
+    public static void main(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        opts.put("states", "50,200,800");
+        opts.put("abc", "2,8");
+        opts.put("eps", "0,0.5");
+        opts.put("trans", "2");
+        opts.put("nth", "6,10,14");
+        opts.put("strings", "20000");
+        opts.put("length", "64");
+        opts.put("warmup", "3");
+        opts.put("iterations", "5");
+        opts.put("seed", "361");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !opts.containsKey(arg.substring(0, eq))) {
+                System.err.println("unknown option " + arg + ", expected one of " + opts.keySet());
+                System.exit(2);
+            }
+            opts.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        Benchmarks b = new Benchmarks(Integer.parseInt(opts.get("warmup")), Integer.parseInt(opts.get("iterations")));
+        int count = Integer.parseInt(opts.get("strings"));
+        int length = Integer.parseInt(opts.get("length"));
+        long seed = Long.parseLong(opts.get("seed"));
+        double trans = Double.parseDouble(opts.get("trans"));
+
+        System.out.printf("%-34s %-14s %12s %12s %14s%n", "case", "operation", "ms/op", "KB/op", "strings/s");
+        for (int states : ints(opts.get("states"))) {
+            for (int abc : ints(opts.get("abc"))) {
+                for (double eps : doubles(opts.get("eps"))) {
+                    NFA nfa = NFAGenerator.random(states, abc, trans, eps, 0.1, seed);
+                    String name = String.format("random n=%d abc=%d eps=%.2f", states, abc, eps);
+                    b.run(name, nfa, NFAGenerator.strings(count, length, abc, seed + 1));
+                }
+            }
+        }
+        for (int n : ints(opts.get("nth"))) {
+            b.run("nth-from-last n=" + n, NFAGenerator.nthFromLast(n), NFAGenerator.strings(count, length, 2, seed + 1));
+        }
+        System.out.println("(sink " + (sink & 1) + ")");
+    }
+
+    /**
+     * Measures every operation on one NFA
+     *
+     * @param name    name of the case
+     * @param nfa     the NFA
+     * @param strings the strings to match
+     */
+    private void run(String name, NFA nfa, String[] strings) {
+        report(name, "getDFA", measure(() -> sink += nfa.getDFA().getStates().size()), -1);
+        report(name, "getDFA(pool)", measure(() -> sink += nfa.getDFA(ForkJoinPool.commonPool()).getStates().size()), -1);
+
+        Set<? extends State> states = nfa.getStates();
+        report(name, "eClosure", measure(() -> {
+            for (State s : states) {
+                sink += nfa.eClosure((NFAState) s).size();
+            }
+        }), -1);
+
+        Set<NFAState> start = nfa.eClosure((NFAState) nfa.getStartState());
+        report(name, "combineSets", measure(() -> {
+            for (char c : nfa.getABC()) {
+                sink += nfa.combineSets(String.valueOf(c), start).size();
+            }
+        }), -1);
+
+        DFA dfa = nfa.getDFA();
+        //DFA.accepts stops the program on symbols it has no transition on
+        if (covers(dfa, strings)) {
+            double[] r = measure(() -> {
+                for (String s : strings) {
+                    sink += dfa.accepts(s) ? 1 : 0;
+                }
+            });
+            report(name, "DFA.accepts", r, strings.length);
+        }
+        CompiledDFA compiled = dfa.compile();
+        report(name, "compiled", measure(() -> {
+            for (String s : strings) {
+                sink += compiled.accepts(s) ? 1 : 0;
+            }
+        }), strings.length);
+        PackedDFA packed = dfa.pack();
+        report(name, "packed", measure(() -> {
+            for (String s : strings) {
+                sink += packed.accepts(s) ? 1 : 0;
+            }
+        }), strings.length);
+        report(name, "acceptsAll", measure(() -> sink += compiled.acceptsAll(Arrays.asList(strings)).length), strings.length);
+        report(name, "NFA.accepts", measure(() -> {
+            for (String s : strings) {
+                sink += nfa.accepts(s) ? 1 : 0;
+            }
+        }), strings.length);
+
+        //last since it changes the nfa, every run adds the same transition out of the last state
+        String last = "q" + (states.size() - 1);
+        nfa.getIncrementalDFA();
+        report(name, "incremental", measure(() -> {
+            nfa.addTransition(last, 'a', "q0");
+            sink += nfa.getIncrementalDFA().getStates().size();
+        }), -1);
+    }
+
+    /**
+     * @param op the operation
+     * @return mean milliseconds and allocated bytes per run
+     */
+    private double[] measure(Runnable op) {
+        for (int i = 0; i < warmup; i++) {
+            op.run();
+        }
+        long bytes = allocatedBytes();
+        long t = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            op.run();
+        }
+        long elapsed = System.nanoTime() - t;
+        long allocated = allocatedBytes() - bytes;
+        return new double[]{elapsed / 1e6 / iterations, bytes < 0 ? -1 : allocated / (double) iterations};
+    }
+
+    /**
+     * @param name    name of the case
+     * @param op      name of the operation
+     * @param result  result of measure
+     * @param strings number of strings matched per run, -1 if the operation does not match strings
+     */
+    private static void report(String name, String op, double[] result, int strings) {
+        String kb = result[1] < 0 ? "n/a" : String.format("%.1f", result[1] / 1024);
+        String rate = strings < 0 ? "" : String.format("%.0f", strings / (result[0] / 1000));
+        System.out.printf("%-34s %-14s %12.3f %12s %14s%n", name, op, result[0], kb, rate);
+    }
+
+    /**
+     * @return bytes allocated by this thread so far or -1 if the JVM does not count them
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * @param dfa     a DFA
+     * @param strings generated strings
+     * @return true if the DFA has transitions on every symbol of the strings
+     */
+    private static boolean covers(DFA dfa, String[] strings) {
+        for (String s : strings) {
+            for (int i = 0; i < s.length(); i++) {
+                if (!dfa.getABC().contains(s.charAt(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int[] ints(String list) {
+        return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static double[] doubles(String list) {
+        return Arrays.stream(list.split(",")).mapToDouble(Double::parseDouble).toArray();
+    }
+}
@@ -0,0 +1,543 @@
+package fa.bench;
+
+import fa.State;
+import fa.dfa.CompiledDFA;
+import fa.dfa.DFA;
+import fa.dfa.LineMatcher;
+import fa.dfa.MappedDFA;
+import fa.dfa.PackedDFA;
+import fa.nfa.BudgetExceededException;
+import fa.nfa.DeterminizationBudget;
+import fa.nfa.Glushkov;
+import fa.nfa.LazyDFA;
+import fa.nfa.MultiMatcher;
+import fa.nfa.NFA;
+import fa.nfa.NFAState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+/**
+ * Randomized cross checks of the constructions and matchers against each
+ * other and against a plain simulation of the NFA written here with nothing
+ * but the public NFAState transitions. For seeded random NFAs:
+ * <ul>
+ *   <li>the parallel construction must print the same DFA as getDFA</li>
+ *   <li>after states and transitions are added, getIncrementalDFA must
+ *   print the same DFA as getDFA</li>
+ *   <li>NFA.accepts must agree with the plain simulation both with the bit
+ *   parallel tables, up to 256 states, and with BitSets beyond</li>
+ *   <li>DFA.accepts, the minimized DFA, the compiled, packed and lazy
+ *   matchers, the cursor and removeEpsilons must agree with the plain
+ *   simulation</li>
+ *   <li>MultiMatcher, joining it with a second random NFA, must report
+ *   the NFAs the plain simulation accepts, and the intersection, union,
+ *   difference and complement of their DFAs must accept the strings the
+ *   plain simulation says they should</li>
+ *   <li>getDFA with a budget of exactly the states of the DFA must print
+ *   the same DFA as getDFA, and one state less or a budget of one byte must
+ *   throw BudgetExceededException for that limit</li>
+ * </ul>
+ * For random NFAs over wide Unicode ranges NFA.accepts must agree with the
+ * plain simulation, and a CompiledDFA written to a file and mapped back with
+ * MappedDFA, and LineMatcher on a UTF-8 file of the same strings must agree
+ * with NFA.accepts, and
+ * Glushkov.compile must agree with java.util.regex on random patterns.
+ * <p>
+ * Options are given as name=value pairs, lists are comma separated:
+ * states, abc (alphabet size), cases (NFAs per state count), strings
+ * (strings per NFA), patterns and seed. The program exits with status 1
+ * if any check fails.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public class CrossCheck {
+    //mismatches printed before the rest are only counted
+    private static final int SHOWN = 10;
+    //most states NFA.accepts simulates with bit parallel tables for small alphabets
+    private static final int BIT_PARALLEL = 256;
+    //first and last characters of the ranges the Unicode NFAs move on, some overlapping,
+    //one holding 'e' and some thousands of characters wide
+    private static final char[][] RANGES = {
+            {'a', 'a'}, {'b', 'd'}, {'a', 'z'}, {'\u00e0', '\u00ff'}, {'\u0100', '\u017f'},
+            {'\u0100', '\u4dff'}, {'\u4e00', '\u9ffe'}, {'\u4e00', '\u4fff'}, {'\uff00', '\uffff'}
+    };
+    //characters outside every range
+    private static final char[] OUTSIDE = {'A', '\u0500', '\u9fff', '\ufeff'};
+
+    private final PrintStream out;
+    private final Map<String, int[]> results = new HashMap<>();
+    private final List<String> order = new ArrayList<>();
+    private int shown;
+
+    /**
+     * @param args name=value options, see the class comment
+     * @throws IOException if a temporary file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> opts = new HashMap<>();
+        opts.put("states", "3,8,40,70,256,257,300");
+        opts.put("abc", "3");
+        opts.put("cases", "60");
+        opts.put("strings", "200");
+        opts.put("patterns", "500");
+        opts.put("seed", "361");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !opts.containsKey(arg.substring(0, eq))) {
+                System.err.println("unknown option " + arg + ", expected one of " + opts.keySet());
+                System.exit(2);
+            }
+            opts.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int abc = Integer.parseInt(opts.get("abc"));
+        int cases = Integer.parseInt(opts.get("cases"));
+        int strings = Integer.parseInt(opts.get("strings"));
+        long seed = Long.parseLong(opts.get("seed"));
+
+        //the DFA classes print a warning for a start state that is also final
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        CrossCheck c = new CrossCheck(out);
+        Random rnd = new Random(seed);
+        for (String states : opts.get("states").split(",")) {
+            int n = Integer.parseInt(states);
+            for (int i = 0; i < cases; i++) {
+                c.automaton(n, abc, strings, rnd);
+            }
+        }
+        for (int i = 0; i < cases; i++) {
+            c.unicode(i, strings, rnd);
+        }
+        c.patterns(Integer.parseInt(opts.get("patterns")), strings, rnd);
+        System.setOut(out);
+        System.exit(c.report() ? 0 : 1);
+    }
+
+    /**
+     * @param out where the results go, System.out is silenced while checking
+     */
+    private CrossCheck(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Checks every construction and matcher on one random NFA
+     *
+     * @param n       number of states
+     * @param abc     alphabet size
+     * @param strings number of strings to match
+     * @param rnd     source of the NFA and the strings
+     */
+    private void automaton(int n, int abc, int strings, Random rnd) {
+        //sparse enough that the DFA of the largest NFAs stays small
+        double trans = n > 64 ? 1.1 : 1.6;
+        double eps = rnd.nextInt(3) * 0.2;
+        long nfaSeed = rnd.nextLong();
+        String name = "random n=" + n + " seed=" + nfaSeed;
+        NFA nfa = NFAGenerator.random(n, abc, trans, eps, 0.2, nfaSeed);
+
+        DFA dfa = nfa.getDFA();
+        check("getDFA(pool) prints getDFA", name,
+                dfa.toString().equals(nfa.getDFA(ForkJoinPool.commonPool()).toString()));
+        CompiledDFA compiled = dfa.compile();
+        PackedDFA packed = dfa.pack();
+        DFA minimal = dfa.minimize();
+        LazyDFA lazy = new LazyDFA(nfa);
+        NFA noEpsilons = nfa.removeEpsilons();
+        //DFA.accepts stops the program on a symbol outside the alphabet of the NFA
+        char[] words = symbols(nfa);
+        for (int i = 0; i < strings; i++) {
+            String s = word(words, rnd.nextInt(12), rnd);
+            String input = s.isEmpty() ? "e" : s;
+            boolean expected = simulate(nfa, s);
+            String where = name + " input \"" + s + "\"";
+            check(n <= BIT_PARALLEL ? "NFA.accepts bit parallel" : "NFA.accepts BitSet", where,
+                    nfa.accepts(input) == expected);
+            check("DFA.accepts", where, dfa.accepts(input) == expected);
+            check("minimize", where, minimal.accepts(input) == expected);
+            check("CompiledDFA", where, compiled.accepts(input) == expected);
+            check("PackedDFA", where, packed.accepts(input) == expected);
+            check("DFACursor", where, compiled.cursor().feed(s).finish() == expected);
+            check("LazyDFA", where, lazy.accepts(input) == expected);
+            check("removeEpsilons", where, noEpsilons.accepts(input) == expected);
+        }
+
+        //a second NFA over the same alphabet for the checks that join two
+        NFA other = NFAGenerator.random(Math.min(n, 8), abc, 1.6, eps, 0.3, rnd.nextLong());
+        pair(name, nfa, dfa, other, strings, rnd);
+        budget(name, nfa, dfa);
+
+        //grow the NFA the way getIncrementalDFA can follow and compare with a full construction
+        nfa.getIncrementalDFA();
+        char[] symbols = NFAGenerator.alphabet(abc);
+        for (int step = 0; step < 3; step++) {
+            String added = "q" + (n + step);
+            if (rnd.nextBoolean()) {
+                nfa.addFinalState(added);
+            } else {
+                nfa.addState(added);
+            }
+            int states = n + step + 1;
+            for (int t = 0; t < 2; t++) {
+                nfa.addTransition("q" + rnd.nextInt(states), symbols[rnd.nextInt(symbols.length)], "q" + rnd.nextInt(states));
+            }
+            check("getIncrementalDFA prints getDFA", name + " step " + step,
+                    nfa.getIncrementalDFA().toString().equals(nfa.getDFA().toString()));
+        }
+    }
+
+    /**
+     * Checks the matchers that join two NFAs
+     *
+     * @param name    the case, printed if a check fails
+     * @param nfa     the first NFA
+     * @param dfa     its DFA
+     * @param other   the second NFA
+     * @param strings number of strings to match
+     * @param rnd     source of the strings
+     */
+    private void pair(String name, NFA nfa, DFA dfa, NFA other, int strings, Random rnd) {
+        MultiMatcher multi = new MultiMatcher(List.of(nfa, other));
+        DFA otherDfa = other.getDFA();
+        DFA intersection = dfa.intersect(otherDfa);
+        DFA union = dfa.union(otherDfa);
+        DFA difference = dfa.difference(otherDfa);
+        //the complement is over the alphabet of the first DFA only
+        DFA complement = dfa.complement();
+        Set<Character> abc = dfa.getABC();
+        char[] words = symbols(nfa, other);
+        for (int i = 0; i < strings; i++) {
+            String s = word(words, rnd.nextInt(12), rnd);
+            String input = s.isEmpty() ? "e" : s;
+            boolean left = simulate(nfa, s);
+            boolean right = simulate(other, s);
+            int[] expected = left && right ? new int[]{0, 1}
+                    : left ? new int[]{0} : right ? new int[]{1} : new int[0];
+            String where = name + " input \"" + s + "\"";
+            check("MultiMatcher", where, Arrays.equals(multi.matches(input), expected));
+            check("intersect", where, intersection.accepts(input) == (left && right));
+            check("union", where, union.accepts(input) == (left || right));
+            check("difference", where, difference.accepts(input) == (left && !right));
+            if (within(s, abc)) {
+                check("complement", where, complement.accepts(input) != left);
+            }
+        }
+    }
+
+    /**
+     * Checks that getDFA with a budget builds the same DFA when the budget
+     * suffices and throws with the right limit when it does not
+     *
+     * @param name the case, printed if a check fails
+     * @param nfa  the NFA
+     * @param dfa  its DFA
+     */
+    private void budget(String name, NFA nfa, DFA dfa) {
+        int states = dfa.getStates().size();
+        check("budget that fits prints getDFA", name,
+                dfa.toString().equals(nfa.getDFA(DeterminizationBudget.ofStates(states)).toString()));
+        if (states > 1) {
+            check("budget throws on states", name, limitHit(nfa, DeterminizationBudget.ofStates(states - 1))
+                    == BudgetExceededException.Limit.STATES);
+        }
+        DeterminizationBudget oneByte = new DeterminizationBudget(Integer.MAX_VALUE, 1, Long.MAX_VALUE);
+        check("budget throws on memory", name, limitHit(nfa, oneByte) == BudgetExceededException.Limit.MEMORY);
+    }
+
+    /**
+     * @param nfa    an NFA
+     * @param budget the budget to determinize it in
+     * @return the limit getDFA ran into, null if it finished
+     */
+    private static BudgetExceededException.Limit limitHit(NFA nfa, DeterminizationBudget budget) {
+        try {
+            nfa.getDFA(budget);
+            return null;
+        } catch (BudgetExceededException e) {
+            return e.getLimit();
+        }
+    }
+
+    /**
+     * Checks NFA.accepts over Unicode ranges against the plain simulation, and
+     * a CompiledDFA written to a file and mapped back, and LineMatcher on the
+     * same strings, against NFA.accepts
+     *
+     * @param number  number of the case, printed if a check fails
+     * @param strings number of strings to match
+     * @param rnd     source of the NFA and the strings
+     * @throws IOException if the temporary file cannot be written
+     */
+    private void unicode(int number, int strings, Random rnd) throws IOException {
+        int n = 2 + rnd.nextInt(7);
+        NFA nfa = new NFA();
+        nfa.addStartState("q0");
+        for (int i = 1; i < n; i++) {
+            if (rnd.nextInt(3) == 0) {
+                nfa.addFinalState("q" + i);
+            } else {
+                nfa.addState("q" + i);
+            }
+        }
+        for (int t = 0; t < 2 * n; t++) {
+            char[] range = RANGES[rnd.nextInt(RANGES.length)];
+            if (rnd.nextInt(4) == 0) {
+                //a single symbol that may also be in a range
+                nfa.addTransition("q" + rnd.nextInt(n), unicodeWord(1, rnd).charAt(0), "q" + rnd.nextInt(n));
+            } else {
+                nfa.addTransitions("q" + rnd.nextInt(n), range[0], range[1], "q" + rnd.nextInt(n));
+            }
+        }
+        if (rnd.nextBoolean()) {
+            nfa.addTransition("q" + rnd.nextInt(n), 'e', "q" + rnd.nextInt(n));
+        }
+        String name = "unicode case " + number;
+        CompiledDFA compiled = nfa.getDFA().compile();
+        Path file = Files.createTempFile("crosscheck", ".cdfa");
+        Path lines = Files.createTempFile("crosscheck", ".txt");
+        try {
+            compiled.write(file);
+            MappedDFA mapped = MappedDFA.open(file);
+            StringBuilder text = new StringBuilder();
+            StringBuilder answers = new StringBuilder();
+            String newline = rnd.nextBoolean() ? "\n" : "\r\n";
+            for (int i = 0; i < strings; i++) {
+                String s = unicodeWord(rnd.nextInt(8), rnd);
+                String input = s.isEmpty() ? "e" : s;
+                boolean expected = nfa.accepts(input);
+                String where = name + " input \"" + s + "\"";
+                check("NFA.accepts unicode", where, simulate(nfa, s) == expected);
+                check("CompiledDFA unicode", where, compiled.accepts(input) == expected);
+                check("MappedDFA unicode", where, mapped.accepts(input) == expected);
+                text.append(input).append(newline);
+                answers.append(expected ? "yes\n" : "no\n");
+            }
+            //blank lines at the end get no answer
+            if (rnd.nextBoolean()) {
+                text.append(" ").append(newline).append(newline);
+            }
+            Files.write(lines, text.toString().getBytes(StandardCharsets.UTF_8));
+            ByteArrayOutputStream matched = new ByteArrayOutputStream();
+            long count = new LineMatcher(compiled).matchLines(lines, Channels.newChannel(matched));
+            check("LineMatcher unicode", name, count == strings
+                    && matched.toString(StandardCharsets.UTF_8).equals(answers.toString()));
+        } finally {
+            Files.delete(file);
+            Files.delete(lines);
+        }
+    }
+
+    /**
+     * @param length length of the string
+     * @param rnd    source of the characters
+     * @return a string of characters mostly from the ranges and now and then outside them
+     */
+    private static String unicodeWord(int length, Random rnd) {
+        char[] buf = new char[length];
+        for (int i = 0; i < length; i++) {
+            if (rnd.nextInt(20) == 0) {
+                buf[i] = OUTSIDE[rnd.nextInt(OUTSIDE.length)];
+            } else {
+                char[] range = RANGES[rnd.nextInt(RANGES.length)];
+                buf[i] = (char) (range[0] + rnd.nextInt(range[1] - range[0] + 1));
+                //'e' is never a symbol
+                if (buf[i] == 'e') {
+                    buf[i] = 'f';
+                }
+            }
+        }
+        return new String(buf);
+    }
+
+    /**
+     * Checks Glushkov.compile against java.util.regex on random patterns
+     *
+     * @param patterns number of patterns
+     * @param strings  number of strings per pattern
+     * @param rnd      source of the patterns and the strings
+     */
+    private void patterns(int patterns, int strings, Random rnd) {
+        char[] symbols = {'a', 'b', 'c'};
+        for (int i = 0; i < patterns; i++) {
+            String pattern = regex(rnd, 3);
+            NFA nfa = Glushkov.compile(pattern);
+            Pattern regex = Pattern.compile(pattern);
+            for (int j = 0; j < strings; j++) {
+                String s = word(symbols, rnd.nextInt(8), rnd);
+                check("Glushkov", "pattern " + pattern + " input \"" + s + "\"",
+                        nfa.accepts(s) == regex.matcher(s).matches());
+            }
+        }
+    }
+
+    /**
+     * @param rnd   source of the pattern
+     * @param depth how deep groups may still nest
+     * @return a random pattern over a, b and c in the syntax both Glushkov and java.util.regex read
+     */
+    private static String regex(Random rnd, int depth) {
+        StringBuilder ret = new StringBuilder();
+        int alternatives = 1 + (rnd.nextInt(3) == 0 ? 1 : 0);
+        for (int a = 0; a < alternatives; a++) {
+            if (a > 0) {
+                ret.append('|');
+            }
+            int atoms = 1 + rnd.nextInt(3);
+            for (int i = 0; i < atoms; i++) {
+                int kind = rnd.nextInt(depth > 0 ? 4 : 3);
+                if (kind == 0) {
+                    ret.append("[a-b]");
+                } else if (kind == 3) {
+                    ret.append('(').append(regex(rnd, depth - 1)).append(')');
+                } else {
+                    ret.append("abc".charAt(rnd.nextInt(3)));
+                }
+                int op = rnd.nextInt(6);
+                if (op < 3) {
+                    ret.append("*+?".charAt(op));
+                }
+            }
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Plain set of states simulation through the public transitions of the states
+     *
+     * @param nfa the NFA
+     * @param s   the input, "" for the empty string
+     * @return true if the NFA accepts s
+     */
+    private static boolean simulate(NFA nfa, String s) {
+        Set<NFAState> curr = closure(Set.of((NFAState) nfa.getStartState()));
+        for (int i = 0; i < s.length() && !curr.isEmpty(); i++) {
+            Set<NFAState> moved = new HashSet<>();
+            for (NFAState q : curr) {
+                Set<NFAState> to = q.getTransitions(String.valueOf(s.charAt(i)));
+                if (to != null) {
+                    moved.addAll(to);
+                }
+            }
+            curr = closure(moved);
+        }
+        for (State f : nfa.getFinalStates()) {
+            if (curr.contains(f)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param from a set of states
+     * @return the states reachable from it on empty transitions, itself included
+     */
+    private static Set<NFAState> closure(Set<NFAState> from) {
+        Set<NFAState> ret = new HashSet<>(from);
+        List<NFAState> stack = new ArrayList<>(from);
+        while (!stack.isEmpty()) {
+            Set<NFAState> to = stack.remove(stack.size() - 1).getTransitions("e");
+            if (to != null) {
+                for (NFAState q : to) {
+                    if (ret.add(q)) {
+                        stack.add(q);
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param nfas NFAs
+     * @return the symbols of their alphabets other than the empty string
+     */
+    private static char[] symbols(NFA... nfas) {
+        Set<Character> abc = new TreeSet<>();
+        for (NFA nfa : nfas) {
+            abc.addAll(nfa.getABC());
+        }
+        abc.remove('e');
+        char[] ret = new char[abc.size()];
+        int k = 0;
+        for (char c : abc) {
+            ret[k++] = c;
+        }
+        return ret;
+    }
+
+    /**
+     * @param s   a string
+     * @param abc an alphabet
+     * @return true if every character of s is in the alphabet
+     */
+    private static boolean within(String s, Set<Character> abc) {
+        for (int i = 0; i < s.length(); i++) {
+            if (!abc.contains(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String word(char[] symbols, int length, Random rnd) {
+        char[] buf = new char[length];
+        for (int i = 0; i < length; i++) {
+            buf[i] = symbols[rnd.nextInt(symbols.length)];
+        }
+        return new String(buf);
+    }
+
+    /**
+     * @param check name of the check
+     * @param where the case, printed if it fails
+     * @param ok    whether it passed
+     */
+    private void check(String check, String where, boolean ok) {
+        int[] r = results.get(check);
+        if (r == null) {
+            r = new int[2];
+            results.put(check, r);
+            order.add(check);
+        }
+        r[0]++;
+        if (!ok) {
+            r[1]++;
+            if (shown++ < SHOWN) {
+                out.println("FAIL " + check + ": " + where);
+            }
+        }
+    }
+
+    /**
+     * @return true if every check passed
+     */
+    private boolean report() {
+        boolean ok = true;
+        for (String check : order) {
+            int[] r = results.get(check);
+            out.printf("%-34s %8d checked %6d failed%n", check, r[0], r[1]);
+            ok &= r[1] == 0;
+        }
+        return ok;
+    }
+}
@@ -0,0 +1,110 @@
+package fa.bench;
+
+import fa.nfa.NFA;
+
+import java.util.Random;
+
+/**
+ * Builds NFAs for the benchmarks. Every generator is seeded so the same
+ * parameters always give the same automaton.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public final class NFAGenerator {
+
+    private NFAGenerator() {
+    }
+
+    /**
+     * Random NFA with states named q0 .. q(n-1), q0 being the start state
+     *
+     * @param states          number of states
+     * @param alphabetSize    number of symbols, taken from a b c d f ... skipping 'e'
+     * @param transitions     average number of symbol transitions per state
+     * @param epsilonDensity  average number of empty transitions per state
+     * @param finalProbability chance that a state is final
+     * @param seed            random seed
+     * @return the NFA
+     */
+    public static NFA random(int states, int alphabetSize, double transitions, double epsilonDensity,
+                             double finalProbability, long seed) {
+        Random rnd = new Random(seed);
+        char[] abc = alphabet(alphabetSize);
+        NFA nfa = new NFA(states);
+        nfa.addStartState("q0");
+        for (int i = 1; i < states; i++) {
+            if (rnd.nextDouble() < finalProbability) {
+                nfa.addFinalState("q" + i);
+            } else {
+                nfa.addState("q" + i);
+            }
+        }
+        long symbolEdges = Math.round(states * transitions);
+        for (long i = 0; i < symbolEdges; i++) {
+            nfa.addTransition("q" + rnd.nextInt(states), abc[rnd.nextInt(abc.length)], "q" + rnd.nextInt(states));
+        }
+        long emptyEdges = Math.round(states * epsilonDensity);
+        for (long i = 0; i < emptyEdges; i++) {
+            nfa.addTransition("q" + rnd.nextInt(states), 'e', "q" + rnd.nextInt(states));
+        }
+        return nfa;
+    }
+
+    /**
+     * NFA over {a, b} for "the n-th symbol from the end is a". It has n + 1
+     * states and its DFA has 2^n, the textbook case of subset explosion.
+     *
+     * @param n position of the symbol from the end
+     * @return the NFA
+     */
+    public static NFA nthFromLast(int n) {
+        NFA nfa = new NFA(n + 1);
+        nfa.addStartState("q0");
+        for (int i = 1; i < n; i++) {
+            nfa.addState("q" + i);
+        }
+        nfa.addFinalState("q" + n);
+        nfa.addTransition("q0", 'a', "q0");
+        nfa.addTransition("q0", 'b', "q0");
+        nfa.addTransition("q0", 'a', "q1");
+        for (int i = 1; i < n; i++) {
+            nfa.addTransition("q" + i, 'a', "q" + (i + 1));
+            nfa.addTransition("q" + i, 'b', "q" + (i + 1));
+        }
+        return nfa;
+    }
+
+    /**
+     * @param count  number of strings
+     * @param length length of every string
+     * @param alphabetSize number of symbols, as for random
+     * @param seed   random seed
+     * @return random strings over the alphabet
+     */
+    public static String[] strings(int count, int length, int alphabetSize, long seed) {
+        Random rnd = new Random(seed);
+        char[] abc = alphabet(alphabetSize);
+        String[] ret = new String[count];
+        char[] buf = new char[length];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < length; j++) {
+                buf[j] = abc[rnd.nextInt(abc.length)];
+            }
+            ret[i] = new String(buf);
+        }
+        return ret;
+    }
+
+    /**
+     * @param size number of symbols
+     * @return the first size lower case letters and digits, without 'e'
+     */
+    static char[] alphabet(int size) {
+        String letters = "abcdfghijklmnopqrstuvwxyz0123456789";
+        if (size < 1 || size > letters.length()) {
+            throw new IllegalArgumentException("alphabet size must be between 1 and " + letters.length());
+        }
+        return letters.substring(0, size).toCharArray();
+    }
+}
@@ -0,0 +1,99 @@
+package fa;
+
+/**
+ * Metrics of one subset construction, reported to an FAListener. Times are
+ * in nanoseconds. The table phase indexes the NFA and computes its
+ * eClosures, the explore phase discovers the subsets and the emit phase
+ * builds the DFA object.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public final class ConstructionStats {
+    private final boolean incremental;
+    private final int subsetsExplored;
+    private final int queueHighWater;
+    private final long closureHits;
+    private final long closureMisses;
+    private final int dfaStates;
+    private final long dfaTransitions;
+    private final long tableNanos;
+    private final long exploreNanos;
+    private final long emitNanos;
+
+    /**
+     * @param incremental     true if an earlier construction was brought up to date
+     * @param subsetsExplored number of subsets whose transitions were computed
+     * @param queueHighWater  largest number of subsets waiting to be explored
+     * @param closureHits     eClosures of target sets found in the cache
+     * @param closureMisses   eClosures of target sets that had to be computed
+     * @param dfaStates       number of states of the DFA
+     * @param dfaTransitions  number of transitions of the DFA
+     * @param tableNanos      time spent indexing the NFA
+     * @param exploreNanos    time spent exploring subsets
+     * @param emitNanos       time spent building the DFA
+     */
+    public ConstructionStats(boolean incremental, int subsetsExplored, int queueHighWater,
+                             long closureHits, long closureMisses, int dfaStates, long dfaTransitions,
+                             long tableNanos, long exploreNanos, long emitNanos) {
+        this.incremental = incremental;
+        this.subsetsExplored = subsetsExplored;
+        this.queueHighWater = queueHighWater;
+        this.closureHits = closureHits;
+        this.closureMisses = closureMisses;
+        this.dfaStates = dfaStates;
+        this.dfaTransitions = dfaTransitions;
+        this.tableNanos = tableNanos;
+        this.exploreNanos = exploreNanos;
+        this.emitNanos = emitNanos;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public int getSubsetsExplored() {
+        return subsetsExplored;
+    }
+
+    public int getQueueHighWater() {
+        return queueHighWater;
+    }
+
+    public long getClosureHits() {
+        return closureHits;
+    }
+
+    public long getClosureMisses() {
+        return closureMisses;
+    }
+
+    public int getDfaStates() {
+        return dfaStates;
+    }
+
+    public long getDfaTransitions() {
+        return dfaTransitions;
+    }
+
+    public long getTableNanos() {
+        return tableNanos;
+    }
+
+    public long getExploreNanos() {
+        return exploreNanos;
+    }
+
+    public long getEmitNanos() {
+        return emitNanos;
+    }
+
+    @Override
+    public String toString() {
+        return (incremental ? "incremental" : "full") + " construction: "
+                + subsetsExplored + " subsets explored, queue high water " + queueHighWater
+                + ", closure cache " + closureHits + " hits " + closureMisses + " misses, "
+                + dfaStates + " states " + dfaTransitions + " transitions, table "
+                + tableNanos / 1000 + "us explore " + exploreNanos / 1000 + "us emit " + emitNanos / 1000 + "us";
+    }
+}
@@ -0,0 +1,33 @@
+package fa;
+
+/**
+ * Receives metrics from an automaton. Every method does nothing by default
+ * so a listener only overrides the events it cares about. Automata without a
+ * listener skip the reporting entirely and pay one null check per call, so
+ * a listener can be left attached in production.
+ * <p>
+ * Events are reported on the thread that did the work, a listener shared by
+ * several threads has to be thread safe.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public interface FAListener {
+
+    /**
+     * Called after a subset construction, full or incremental, has built a DFA
+     *
+     * @param stats what the construction did and how long each phase took
+     */
+    default void constructed(ConstructionStats stats) {
+    }
+
+    /**
+     * Called after an automaton has decided whether it accepts a string
+     *
+     * @param steps    number of characters read before the answer was known
+     * @param accepted true if the string was accepted
+     */
+    default void matched(int steps, boolean accepted) {
+    }
+}
@@ -0,0 +1,420 @@
+package fa.dfa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Table driven form of a DFA for fast matching. Symbols that every state
+ * treats the same way share a symbol class, so the transition function is a
+ * flat int array with one row per state and one column per class rather than
+ * per symbol. Code points below 256 find their class through a direct lookup
+ * and the others through a sorted table of code point ranges.
+ * Characters outside the alphabet, missing transitions and every state from
+ * which no final state can be reached lead to an extra non-final dead row, so
+ * a string is rejected instead of stopping the program the way
+ * DFAState.getTo does, and matching stops as soon as the dead row is entered.
+ * <p>
+ * Instances never change after construction, so one instance can be shared
+ * by any number of threads, which is what the acceptsAll batch methods do.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public final class CompiledDFA {
+    //strings matched by one task before the batch is not split further
+    private static final int BATCH_THRESHOLD = 1024;
+
+    //code points below this are classified by a direct lookup
+    static final int LOW = 256;
+
+    //lowClass[c] is the symbol class of code point c below LOW, class 0 holds everything outside the alphabet
+    private final int[] lowClass;
+    //code points from rangeStart[i] up to rangeStart[i + 1] - 1 are in class rangeClass[i],
+    //rangeStart[0] is LOW and the last range runs to the end of Unicode
+    private final int[] rangeStart;
+    private final int[] rangeClass;
+    //number of symbol classes, the width of a row
+    private final int classes;
+    //delta[row + cls] is the row of the next state, rows are premultiplied by classes
+    private final int[] delta;
+    //bit i is set if state i is final
+    private final long[] finals;
+    //row of the start state
+    private final int start;
+    //row of the dead state, every state that cannot reach a final state leads here
+    private final int deadRow;
+
+    /**
+     * The state every state goes to on one symbol, symbols with equal
+     * columns end up in the same class
+     */
+    private static final class Column {
+        private final int[] targets;
+
+        private Column(int[] targets) {
+            this.targets = targets;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Column && Arrays.equals(targets, ((Column) o).targets);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(targets);
+        }
+    }
+
+    /**
+     * @param dfa the DFA to compile, later changes to it are not seen
+     */
+    public CompiledDFA(DFA dfa) {
+        //number the states in the order they were added, the dead state goes last
+        Map<DFAState, Integer> index = new HashMap<>();
+        for (DFAState s : dfa.getStates()) {
+            index.put(s, index.size());
+        }
+        int dead = index.size();
+        int n = dead + 1;
+
+        //class 0 is the column of every symbol that only leads to the dead state
+        int[] deadColumn = new int[n];
+        Arrays.fill(deadColumn, dead);
+        Map<Column, Integer> columns = new HashMap<>();
+        List<int[]> byClass = new ArrayList<>();
+        columns.put(new Column(deadColumn), 0);
+        byClass.add(deadColumn);
+
+        //the alphabet in code point order, so neighbouring symbols can form ranges
+        char[] symbols = new char[dfa.getABC().size()];
+        int k = 0;
+        for (char c : dfa.getABC()) {
+            symbols[k++] = c;
+        }
+        Arrays.sort(symbols);
+        int[] symbolClass = new int[symbols.length];
+        for (int sym = 0; sym < symbols.length; sym++) {
+            int[] column = new int[n];
+            for (DFAState s : dfa.getStates()) {
+                DFAState to = s.transition(symbols[sym]);
+                column[index.get(s)] = to == null ? dead : index.get(to);
+            }
+            column[dead] = dead;
+            Integer cls = columns.get(new Column(column));
+            if (cls == null) {
+                cls = byClass.size();
+                columns.put(new Column(column), cls);
+                byClass.add(column);
+            }
+            symbolClass[sym] = cls;
+        }
+        classes = byClass.size();
+
+        //direct lookup for the low code points, ranges of equal class above them
+        lowClass = new int[LOW];
+        List<Integer> starts = new ArrayList<>();
+        List<Integer> rangeClasses = new ArrayList<>();
+        starts.add(LOW);
+        rangeClasses.add(0);
+        int lastEnd = LOW - 1;
+        for (int sym = 0; sym < symbols.length; sym++) {
+            int c = symbols[sym];
+            int cls = symbolClass[sym];
+            if (c < LOW) {
+                lowClass[c] = cls;
+                continue;
+            }
+            int last = starts.size() - 1;
+            //a gap after a range of symbols is outside the alphabet
+            if (c > lastEnd + 1 && rangeClasses.get(last) != 0) {
+                starts.add(lastEnd + 1);
+                rangeClasses.add(0);
+                last++;
+            }
+            if (starts.get(last) == c) {
+                rangeClasses.set(last, cls);
+            } else if (rangeClasses.get(last) != cls) {
+                starts.add(c);
+                rangeClasses.add(cls);
+            }
+            lastEnd = c;
+        }
+        if (rangeClasses.get(rangeClasses.size() - 1) != 0) {
+            starts.add(lastEnd + 1);
+            rangeClasses.add(0);
+        }
+        rangeStart = starts.stream().mapToInt(Integer::intValue).toArray();
+        rangeClass = rangeClasses.stream().mapToInt(Integer::intValue).toArray();
+
+        delta = new int[n * classes];
+        for (int cls = 0; cls < classes; cls++) {
+            int[] column = byClass.get(cls);
+            for (int q = 0; q < n; q++) {
+                delta[q * classes + cls] = column[q] * classes;
+            }
+        }
+        finals = new long[(n + 63) >>> 6];
+        for (DFAState s : dfa.getStates()) {
+            if (s.isFinal()) {
+                int i = index.get(s);
+                finals[i >>> 6] |= 1L << i;
+            }
+        }
+        //states that cannot reach a final state all become the dead state, so
+        //matching can stop at the first step into the dead row
+        long[] live = Liveness.live(n, finals, new Liveness.Graph() {
+            @Override
+            public int degree(int q) {
+                return classes;
+            }
+
+            @Override
+            public int target(int q, int i) {
+                return delta[q * classes + i] / classes;
+            }
+        });
+        deadRow = dead * classes;
+        for (int i = 0; i < delta.length; i++) {
+            int to = delta[i] / classes;
+            if ((live[to >>> 6] & (1L << to)) == 0) {
+                delta[i] = deadRow;
+            }
+        }
+        int first = dfa.getStartState() == null ? dead : index.get(dfa.getStartState());
+        start = (live[first >>> 6] & (1L << first)) == 0 ? deadRow : first * classes;
+    }
+
+    /**
+     * Simulates the DFA on the input. Like DFA.accepts the single
+     * character string "e" stands for the empty string.
+     *
+     * @param input the input string
+     * @return true if the input is in the language of the DFA
+     */
+    public boolean accepts(CharSequence input) {
+        int len = input.length();
+        if (len == 1 && input.charAt(0) == 'e') {
+            len = 0;
+        }
+        //local copies keep the loop on registers
+        int[] lowClass = this.lowClass;
+        int[] delta = this.delta;
+        int deadRow = this.deadRow;
+        int row = start;
+        for (int i = 0; i < len && row != deadRow; i++) {
+            char c = input.charAt(i);
+            row = delta[row + (c < LOW ? lowClass[c] : rangeClassOf(c))];
+        }
+        return isFinal(row / classes);
+    }
+
+    /**
+     * Matches every string of the batch, splitting the batch across the
+     * threads of the common fork join pool.
+     *
+     * @param inputs the strings to match
+     * @return element i is true if the DFA accepts string i
+     */
+    public boolean[] acceptsAll(List<? extends CharSequence> inputs) {
+        return acceptsAll(inputs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Matches every string of the batch, splitting the batch across the
+     * threads of the given pool.
+     *
+     * @param inputs the strings to match
+     * @param pool   the pool to run on
+     * @return element i is true if the DFA accepts string i
+     */
+    public boolean[] acceptsAll(List<? extends CharSequence> inputs, ForkJoinPool pool) {
+        //the tasks index into the list, so a linked list is copied first
+        if (!(inputs instanceof RandomAccess)) {
+            inputs = new ArrayList<>(inputs);
+        }
+        boolean[] ret = new boolean[inputs.size()];
+        pool.invoke(new BatchTask(inputs, ret, 0, ret.length));
+        return ret;
+    }
+
+    /**
+     * Matches every string of the stream in parallel.
+     *
+     * @param inputs the strings to match
+     * @return bit i is set if the DFA accepts the i-th string of the stream
+     */
+    public BitSet acceptsAll(Stream<? extends CharSequence> inputs) {
+        boolean[] accepted = acceptsAll(inputs.collect(Collectors.toList()));
+        BitSet ret = new BitSet(accepted.length);
+        for (int i = 0; i < accepted.length; i++) {
+            if (accepted[i]) {
+                ret.set(i);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Matches a range of a batch, splitting it in half until it is small enough
+     */
+    private final class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<? extends CharSequence> inputs;
+        private final boolean[] results;
+        private final int from;
+        private final int to;
+
+        private BatchTask(List<? extends CharSequence> inputs, boolean[] results, int from, int to) {
+            this.inputs = inputs;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    results[i] = accepts(inputs.get(i));
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BatchTask(inputs, results, from, mid), new BatchTask(inputs, results, mid, to));
+            }
+        }
+    }
+
+    /**
+     * Writes the tables in the binary format read by MappedDFA.open,
+     * replacing the file if it exists
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        int states = getStateCount();
+        int finalWords = (states + 63) >>> 6;
+        ByteBuffer buf = ByteBuffer.allocate(MappedDFA.HEADER_BYTES + 8 * finalWords + 4 * LOW
+                + 8 * rangeStart.length + 4 * delta.length).order(MappedDFA.ORDER);
+        buf.putInt(MappedDFA.MAGIC).putInt(MappedDFA.VERSION).putInt(classes).putInt(states)
+                .putInt(start).putInt(rangeStart.length).putLong(0);
+        for (int i = 0; i < finalWords; i++) {
+            buf.putLong(i < finals.length ? finals[i] : 0);
+        }
+        //the view does not move the position of buf, so write it from the start
+        buf.asIntBuffer().put(lowClass).put(rangeStart).put(rangeClass).put(delta);
+        buf.rewind();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+    }
+
+    /**
+     * @return a new cursor at the start state, for input that arrives in pieces
+     */
+    public DFACursor cursor() {
+        return new DFACursor(this);
+    }
+
+    /**
+     * @return number of symbol classes, class 0 being every symbol outside the alphabet
+     */
+    public int getClassCount() {
+        return classes;
+    }
+
+    /**
+     * @return number of states including the dead state
+     */
+    public int getStateCount() {
+        return delta.length / classes;
+    }
+
+    /**
+     * @return row of the start state, for matchers of this package that run the table themselves
+     */
+    int startRow() {
+        return start;
+    }
+
+    /**
+     * @return row of the dead state, the only row from which no final state can be reached
+     */
+    int deadRow() {
+        return deadRow;
+    }
+
+    /**
+     * @param row       a row of the table
+     * @param codePoint the next code point, negative for input that is not valid text
+     * @return the row reached from row on the code point
+     */
+    int next(int row, int codePoint) {
+        return delta[row + classOf(codePoint)];
+    }
+
+    /**
+     * @param codePoint a code point, negative for input that is not valid text
+     * @return the symbol class of the code point
+     */
+    int classOf(int codePoint) {
+        if (codePoint < LOW) {
+            return codePoint < 0 ? 0 : lowClass[codePoint];
+        }
+        return rangeClassOf(codePoint);
+    }
+
+    /**
+     * @param codePoint a code point of at least LOW
+     * @return the class of the range holding the code point
+     */
+    private int rangeClassOf(int codePoint) {
+        //binary search for the last range starting at or before the code point
+        int lo = 0;
+        int hi = rangeStart.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (rangeStart[mid] <= codePoint) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return rangeClass[lo];
+    }
+
+    /**
+     * @param row a row of the table
+     * @return true if the state of the row is final
+     */
+    boolean isFinalRow(int row) {
+        return isFinal(row / classes);
+    }
+
+    /**
+     * @param state a state number
+     * @return true if the state is final
+     */
+    private boolean isFinal(int state) {
+        return (finals[state >>> 6] & (1L << state)) != 0;
+    }
+}
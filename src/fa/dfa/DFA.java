@@ -1,6 +1,18 @@
 package fa.dfa;
 
+import fa.FAListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -10,13 +22,38 @@ import java.util.Set;
  * @author elenasherman
  */
 public class DFA implements DFAInterface {
+    //padding of a table cell, which is ten characters wide
+    private static final String CELL = "          ";
+
     private final Set<DFAState> states;
     private DFAState start;
     private final Set<Character> ordAbc;
+    //the symbols of ordAbc, so a range of symbols already in it is not boxed again
+    private final BitSet abcBits = new BitSet();
+    //states by name so lookups do not scan the state set
+    private final Map<String, DFAState> byName;
+    //true if states with lazily built names were added since byName was last filled
+    private boolean unindexed;
+    //receives the step count of every match, null if nobody listens
+    private FAListener listener;
+    //states no final state can be reached from, null until accepts or prune needs them again;
+    //built whole and then published so readers on other threads see a complete set
+    private volatile Set<DFAState> deadStates;
 
     public DFA() {
-        states = new LinkedHashSet<DFAState>();
+        this(16);
+    }
+
+    /**
+     * Constructor for large automata that sizes the state tables up front
+     *
+     * @param expectedStates the number of states the DFA is expected to hold
+     */
+    public DFA(int expectedStates) {
+        int capacity = Math.max(16, (int) (expectedStates / 0.75f) + 1);
+        states = new LinkedHashSet<DFAState>(capacity);
         ordAbc = new LinkedHashSet<Character>();
+        byName = new HashMap<String, DFAState>(capacity);
     }
 
     /* (non-Javadoc)
@@ -62,8 +99,63 @@ public class DFA implements DFAInterface {
         }
     }
 
-    private void addState(DFAState s) {
+    /**
+     * Adds several non-final, not initial states at once
+     *
+     * @param names the labels of the states
+     */
+    public void addStates(Collection<String> names) {
+        for (String name : names) {
+            addState(name);
+        }
+    }
+
+    /**
+     * Adds a state object. A state with a lazily built name is only
+     * indexed by name once a state is first looked up by name.
+     *
+     * @param s the state, its name must not be taken
+     */
+    public void addState(DFAState s) {
+        deadStates = null;
         states.add(s);
+        if (s.hasLazyName()) {
+            unindexed = true;
+        } else {
+            byName.put(s.getName(), s);
+        }
+    }
+
+    /**
+     * Adds a state object and makes it the start state
+     *
+     * @param s the state, its name must not be taken
+     */
+    public void addStartState(DFAState s) {
+        addState(s);
+        start = s;
+    }
+
+    /**
+     * Adds a symbol to the alphabet so it keeps its position even if
+     * the first states have no transition on it
+     *
+     * @param onSymb the symbol
+     */
+    public void addSymbol(char onSymb) {
+        deadStates = null;
+        addSymbols(onSymb, onSymb);
+    }
+
+    /**
+     * @param first first symbol to add to the alphabet
+     * @param last  last symbol, the symbols not in the alphabet yet are added in order
+     */
+    private void addSymbols(char first, char last) {
+        for (int c = abcBits.nextClearBit(first); c <= last; c = abcBits.nextClearBit(c + 1)) {
+            ordAbc.add((char) c);
+        }
+        abcBits.set(first, last + 1);
     }
 
     /* (non-Javadoc)
@@ -81,8 +173,42 @@ public class DFA implements DFAInterface {
             System.exit(2);
         }
         from.addTransition(onSymb, to);
+        deadStates = null;
+
+        addSymbols(onSymb, onSymb);
+    }
+
+    /**
+     * Adds a transition between two states of this DFA without looking
+     * them up by name
+     *
+     * @param from   the state the transition leaves
+     * @param onSymb the alphabet symbol
+     * @param to     the state the transition enters
+     */
+    public void addTransition(DFAState from, char onSymb, DFAState to) {
+        from.addTransition(onSymb, to);
+        deadStates = null;
+        addSymbols(onSymb, onSymb);
+    }
 
-        ordAbc.add(onSymb);
+    /**
+     * Adds a transition on every symbol from first to last. The state keeps
+     * the range as one entry instead of one per symbol, while the symbols of
+     * the range join the alphabet one by one, after the symbols already in it.
+     *
+     * @param from  the state the transitions leave
+     * @param first first symbol of the range
+     * @param last  last symbol of the range, inclusive
+     * @param to    the state the transitions enter
+     */
+    public void addTransitions(DFAState from, char first, char last, DFAState to) {
+        if (first > last) {
+            throw new IllegalArgumentException("empty symbol range " + first + "-" + last);
+        }
+        from.addTransitions(first, last, to);
+        deadStates = null;
+        addSymbols(first, last);
     }
 
     /**
@@ -92,14 +218,16 @@ public class DFA implements DFAInterface {
      * @return null if no state exist, or DFAState object otherwise.
      */
     private DFAState checkIfExists(String name) {
-        DFAState ret = null;
-        for (DFAState s : states) {
-            if (s.getName().equals(name)) {
-                ret = s;
-                break;
+        if (unindexed) {
+            //the lazily built names are only made once someone looks for a name
+            for (DFAState s : states) {
+                if (s.hasLazyName()) {
+                    byName.put(s.getName(), s);
+                }
             }
+            unindexed = false;
         }
-        return ret;
+        return byName.get(name);
     }
 
     /**
@@ -109,60 +237,321 @@ public class DFA implements DFAInterface {
      **/
     @Override
     public String toString() {
+        StringBuilder s = new StringBuilder();
+        try {
+            write(s);
+        } catch (IOException e) {
+            //a StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
+        return s.toString();
+    }
 
-        String s = "Q = { ";
-        String fStates = "F = { ";
+    /**
+     * Writes the DFA in the format of toString in one pass, without
+     * building the whole text in memory first. The name of every state
+     * is built once, however often it appears in the table.
+     *
+     * @param out where the DFA is written, it is neither flushed nor closed
+     * @throws IOException if out cannot be written
+     */
+    public void write(Appendable out) throws IOException {
+        Map<DFAState, String> names = new HashMap<>(Math.max(16, (int) (states.size() / 0.75f) + 1));
         for (DFAState state : states) {
-            s += state.toString();
-            s += " ";
-            if (state.isFinal()) {
-                fStates += state.toString();
-                fStates += " ";
-            }
+            names.put(state, state.getName());
+        }
+        out.append("Q = { ");
+        for (DFAState state : states) {
+            out.append(names.get(state)).append(' ');
         }
-        s += "}\n";
-        fStates += "}\n";
-        s += "Sigma = { ";
+        out.append("}\n");
+        out.append("Sigma = { ");
         for (char c : ordAbc) {
-            s += c + " ";
+            out.append(c).append(' ');
         }
-        s += "}\n";
+        out.append("}\n");
         //create transition table
-        s += "delta =\n" + String.format("%10s", "");
+        out.append("delta =\n");
+        pad(out, "");
         for (char c : ordAbc) {
-            s += String.format("%10s", c);
+            pad(out, String.valueOf(c));
         }
-        s += "\n";
+        out.append('\n');
         for (DFAState state : states) {
-            s += String.format("%10s", state.toString());
+            pad(out, names.get(state));
             for (char c : ordAbc) {
-                s += String.format("%10s", state.getTo(c).toString());
+                //a target outside the state set is named as it comes
+                pad(out, names.computeIfAbsent(state.getTo(c), DFAState::getName));
             }
-            s += "\n";
+            out.append('\n');
         }
         //start state
-        s += "q0 = " + start + "\n";
-        s += fStates;
-        return s;
+        out.append("q0 = ").append(start == null ? "null" : names.get(start)).append('\n');
+        out.append("F = { ");
+        for (DFAState state : states) {
+            if (state.isFinal()) {
+                out.append(names.get(state)).append(' ');
+            }
+        }
+        out.append("}\n");
+    }
+
+    /**
+     * Writes s right aligned in a column of ten characters, as %10s does
+     *
+     * @param out where s is written
+     * @param s   the cell
+     * @throws IOException if out cannot be written
+     */
+    private static void pad(Appendable out, String s) throws IOException {
+        if (s.length() < CELL.length()) {
+            out.append(CELL, s.length(), CELL.length());
+        }
+        out.append(s);
     }
 
+    /**
+     * Simulates the DFA on the input and rejects it as soon as a state is
+     * reached from which no final state can be reached, without reading the
+     * rest of the input.
+     *
+     * @param input the input string, "e" stands for the empty string
+     * @return true if the input is in the language of the DFA
+     */
     @Override
     public boolean accepts(String input) {
+        Set<DFAState> dead = deadStates();
         boolean ret = false;
         char[] inputString = input.toCharArray();
         DFAState currState = start;
-        //iterate over the chars
+        int steps = 0;
+        //iterate over the chars until a dead state is reached
         if (!(inputString.length == 1 && inputString[0] == 'e')) {
-            for (char c : inputString) {
-                currState = currState.getTo(c);
+            while (steps < inputString.length && !dead.contains(currState)) {
+                currState = currState.getTo(inputString[steps++]);
             }
         }
         if (currState.isFinal()) {
             ret = true;
         }
+        if (listener != null) {
+            listener.matched(steps, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Finds every state from which no final state can be reached by walking
+     * the transitions backwards from the final states. The set is computed
+     * again after states or transitions are added through this DFA.
+     *
+     * @return the dead states, must not be modified
+     */
+    private Set<DFAState> deadStates() {
+        Set<DFAState> ret = deadStates;
+        if (ret != null) {
+            return ret;
+        }
+        DFAState[] byIndex = states.toArray(new DFAState[0]);
+        Map<DFAState, Integer> index = new HashMap<>();
+        long[] finals = new long[(byIndex.length + 63) >>> 6];
+        for (int q = 0; q < byIndex.length; q++) {
+            index.put(byIndex[q], q);
+            if (byIndex[q].isFinal()) {
+                finals[q >>> 6] |= 1L << q;
+            }
+        }
+        char[] abc = new char[ordAbc.size()];
+        int k = 0;
+        for (char c : ordAbc) {
+            abc[k++] = c;
+        }
+        long[] live = Liveness.live(byIndex.length, finals, new Liveness.Graph() {
+            @Override
+            public int degree(int q) {
+                return abc.length;
+            }
+
+            @Override
+            public int target(int q, int i) {
+                //a missing transition or one to a state of another DFA leads nowhere
+                Integer to = index.get(byIndex[q].transition(abc[i]));
+                return to == null ? -1 : to;
+            }
+        });
+        ret = new HashSet<>();
+        for (int q = 0; q < byIndex.length; q++) {
+            if (!Liveness.contains(live, q)) {
+                ret.add(byIndex[q]);
+            }
+        }
+        //two threads may both compute it, they get equal sets
+        ret = Collections.unmodifiableSet(ret);
+        deadStates = ret;
         return ret;
     }
 
+    /**
+     * Builds a DFA for the same language without the states that cannot be
+     * reached from the start state. The states that cannot reach a final
+     * state are merged into one dead state named after the first of them,
+     * which every transition into them leads to.
+     *
+     * @return a new DFA, this one is not modified
+     */
+    public DFA prune() {
+        DFA ret = new DFA();
+        for (char c : ordAbc) {
+            ret.addSymbol(c);
+        }
+        if (start == null) {
+            return ret;
+        }
+        Set<DFAState> deadSet = deadStates();
+        List<DFAState> reachable = DFAMinimizer.reachable(this);
+        Map<DFAState, DFAState> copy = new HashMap<>();
+        DFAState dead = null;
+        for (DFAState s : reachable) {
+            DFAState c;
+            if (deadSet.contains(s)) {
+                if (dead == null) {
+                    dead = new DFAState(s.getName(), false);
+                    addCopy(ret, dead, s);
+                } else if (s == start) {
+                    //the start state is dead but an earlier dead state made the copy
+                    ret.addStartState(dead);
+                }
+                c = dead;
+            } else {
+                c = new DFAState(s.getName(), s.isFinal());
+                addCopy(ret, c, s);
+            }
+            copy.put(s, c);
+        }
+        for (DFAState s : reachable) {
+            if (deadSet.contains(s)) {
+                continue;
+            }
+            for (char c : ordAbc) {
+                DFAState to = s.transition(c);
+                if (to != null) {
+                    copy.get(s).addTransition(c, copy.get(to));
+                }
+            }
+        }
+        if (dead != null) {
+            for (char c : ordAbc) {
+                dead.addTransition(c, dead);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param dfa  the DFA being built by prune
+     * @param copy the new state
+     * @param orig the state it was made from
+     */
+    private void addCopy(DFA dfa, DFAState copy, DFAState orig) {
+        if (orig == start) {
+            dfa.addStartState(copy);
+        } else {
+            dfa.addState(copy);
+        }
+    }
+
+    /**
+     * Attaches a listener that is told how many steps every call to
+     * accepts took
+     *
+     * @param listener the listener, null to stop reporting
+     */
+    public void setListener(FAListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Builds the minimal DFA for the language of this one using
+     * Hopcroft's algorithm, see DFAMinimizer
+     *
+     * @return a new DFA, this one is not modified
+     */
+    public DFA minimize() {
+        return new DFAMinimizer(this).minimize();
+    }
+
+    /**
+     * Builds the DFA for the strings both DFAs accept. Only the pairs of
+     * states reachable from the start states are built, see DFAProduct.
+     *
+     * @param other the other DFA
+     * @return a new DFA over the symbols of both DFAs
+     */
+    public DFA intersect(DFA other) {
+        return new DFAProduct(this, other, DFAProduct.Op.INTERSECTION).build();
+    }
+
+    /**
+     * Builds the DFA for the strings either DFA accepts
+     *
+     * @param other the other DFA
+     * @return a new DFA over the symbols of both DFAs
+     */
+    public DFA union(DFA other) {
+        return new DFAProduct(this, other, DFAProduct.Op.UNION).build();
+    }
+
+    /**
+     * Builds the DFA for the strings this DFA accepts and the other does not
+     *
+     * @param other the other DFA
+     * @return a new DFA over the symbols of both DFAs
+     */
+    public DFA difference(DFA other) {
+        return new DFAProduct(this, other, DFAProduct.Op.DIFFERENCE).build();
+    }
+
+    /**
+     * Builds the DFA for the strings over the alphabet of this DFA that it
+     * does not accept. Missing transitions are sent to a dead state, which
+     * becomes final.
+     *
+     * @return a new DFA over the same symbols
+     */
+    public DFA complement() {
+        return new DFAProduct(this, null, DFAProduct.Op.COMPLEMENT).build();
+    }
+
+    /**
+     * Compiles the DFA and opens a cursor on it for input that arrives in
+     * pieces. Callers opening many cursors should compile once and use
+     * CompiledDFA.cursor instead.
+     *
+     * @return a cursor at the start state
+     */
+    public DFACursor cursor() {
+        return compile().cursor();
+    }
+
+    /**
+     * Builds the table driven matcher for this DFA
+     *
+     * @return a snapshot of the DFA that does not change when the DFA does
+     */
+    public CompiledDFA compile() {
+        return new CompiledDFA(this);
+    }
+
+    /**
+     * Builds the compressed matcher for this DFA, smaller than compile for
+     * wide alphabets where most transitions of a state go to the same place
+     *
+     * @return a snapshot of the DFA that does not change when the DFA does
+     */
+    public PackedDFA pack() {
+        return new PackedDFA(this);
+    }
+
     @Override
     public Set<DFAState> getStates() {
         return states;
@@ -0,0 +1,184 @@
+package fa.dfa;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * Runs a CompiledDFA over input that arrives in pieces. The cursor keeps the
+ * current state between calls, so a record can be matched chunk by chunk
+ * as it is read without being buffered whole. Bytes are decoded as UTF-8 and
+ * a sequence split between two chunks is carried over; a byte sequence that
+ * is not UTF-8 counts as a symbol outside the alphabet.
+ * <p>
+ * Once no final state can be reached the cursor is dead, the rest of every
+ * chunk is skipped and the caller can stop reading. Unlike accepts, the
+ * cursor reads 'e' as an ordinary symbol, the empty input is simply a cursor
+ * that was fed nothing. Cursors are not thread safe but any number of them
+ * can share one CompiledDFA.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public final class DFACursor {
+    private final CompiledDFA dfa;
+    private int row;
+    //code points read since the last reset
+    private long length;
+    //code point being decoded and the continuation bytes it still needs
+    private int codePoint;
+    private int pending;
+    //smallest code point the sequence being decoded may encode, anything less is overlong
+    private int minimum;
+
+    /**
+     * @param dfa the DFA to run
+     */
+    DFACursor(CompiledDFA dfa) {
+        this.dfa = dfa;
+        reset();
+    }
+
+    /**
+     * Goes back to the start state, dropping any partly read byte sequence
+     *
+     * @return this cursor
+     */
+    public DFACursor reset() {
+        row = dfa.startRow();
+        length = 0;
+        pending = 0;
+        return this;
+    }
+
+    /**
+     * @param chars the next characters of the input
+     * @return this cursor
+     */
+    public DFACursor feed(CharSequence chars) {
+        cut();
+        int len = chars.length();
+        for (int i = 0; i < len && row != dfa.deadRow(); i++) {
+            advance(chars.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Reads the remaining characters of the buffer, leaving its position at its limit
+     *
+     * @param chars the next characters of the input
+     * @return this cursor
+     */
+    public DFACursor feed(CharBuffer chars) {
+        cut();
+        while (chars.hasRemaining() && row != dfa.deadRow()) {
+            advance(chars.get());
+        }
+        chars.position(chars.limit());
+        return this;
+    }
+
+    /**
+     * Reads the remaining bytes of the buffer as UTF-8, leaving its position at
+     * its limit. A sequence cut off at the end of the buffer is finished by the
+     * next one.
+     *
+     * @param bytes the next bytes of the input
+     * @return this cursor
+     */
+    public DFACursor feed(ByteBuffer bytes) {
+        while (bytes.hasRemaining() && row != dfa.deadRow()) {
+            feedByte(bytes.get() & 0xFF);
+        }
+        bytes.position(bytes.limit());
+        return this;
+    }
+
+    /**
+     * @return true if the input read so far is accepted, a partly read byte
+     * sequence never is
+     */
+    public boolean isAccepting() {
+        return pending == 0 && dfa.isFinalRow(row);
+    }
+
+    /**
+     * @return true if no input that follows can make the cursor accept
+     */
+    public boolean isDead() {
+        return row == dfa.deadRow();
+    }
+
+    /**
+     * @return the number of code points read since the last reset
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Ends the input, a byte sequence left unfinished counts as invalid
+     *
+     * @return true if the input is accepted
+     */
+    public boolean finish() {
+        cut();
+        return dfa.isFinalRow(row);
+    }
+
+    /**
+     * @param b the next byte of UTF-8 input
+     */
+    void feedByte(int b) {
+        if (b < 0x80 || b >= 0xC0) {
+            //a new sequence starts, one still waiting for bytes is cut short
+            cut();
+            if (b < 0x80) {
+                advance(b);
+            } else if (b < 0xE0) {
+                codePoint = b & 0x1F;
+                pending = 1;
+                minimum = 0x80;
+            } else if (b < 0xF0) {
+                codePoint = b & 0x0F;
+                pending = 2;
+                minimum = 0x800;
+            } else if (b < 0xF8) {
+                codePoint = b & 0x07;
+                pending = 3;
+                minimum = 0x10000;
+            } else {
+                advance(-1);
+            }
+        } else if (pending > 0) {
+            codePoint = (codePoint << 6) | (b & 0x3F);
+            if (--pending == 0) {
+                //overlong forms, encoded surrogates and values past Unicode are not UTF-8
+                boolean valid = codePoint >= minimum && codePoint <= Character.MAX_CODE_POINT
+                        && (codePoint < Character.MIN_SURROGATE || codePoint > Character.MAX_SURROGATE);
+                advance(valid ? codePoint : -1);
+            }
+        } else {
+            //a continuation byte without a lead byte
+            advance(-1);
+        }
+    }
+
+    /**
+     * Reads an unfinished byte sequence as one invalid symbol
+     */
+    private void cut() {
+        if (pending > 0) {
+            pending = 0;
+            advance(-1);
+        }
+    }
+
+    /**
+     * @param cp a code point, negative for bytes that are not UTF-8
+     */
+    private void advance(int cp) {
+        row = dfa.next(row, cp);
+        length++;
+    }
+}
@@ -0,0 +1,282 @@
+package fa.dfa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hopcroft's partition refinement. Unreachable states are dropped first,
+ * missing transitions go to an implicit dead state, and the states left are
+ * split until no block can be split by another block on any symbol, which
+ * takes O(n k log n) time for n states and k symbols.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public final class DFAMinimizer {
+    private final DFA dfa;
+    //reachable states in the order they were added to the DFA, the dead state is number n
+    private final List<DFAState> states;
+    private final char[] symbols;
+    //succ[sym][q] is the state q goes to on the symbol
+    private final int[][] succ;
+    //number of the start state
+    private final int start;
+
+    //partition of the states: the members of block b are elems[first[b] .. end[b])
+    private int[] elems;
+    private int[] loc;
+    private int[] blockOf;
+    private int[] first;
+    private int[] end;
+    private int blocks;
+
+    /**
+     * @param dfa the DFA to minimize, it is not modified
+     */
+    public DFAMinimizer(DFA dfa) {
+        this.dfa = dfa;
+        this.states = reachable(dfa);
+        this.symbols = new char[dfa.getABC().size()];
+        int k = 0;
+        for (char c : dfa.getABC()) {
+            symbols[k++] = c;
+        }
+        Map<DFAState, Integer> index = new HashMap<>();
+        for (DFAState s : states) {
+            index.put(s, index.size());
+        }
+        int dead = states.size();
+        succ = new int[symbols.length][dead + 1];
+        for (int sym = 0; sym < symbols.length; sym++) {
+            for (int q = 0; q < dead; q++) {
+                DFAState to = states.get(q).transition(symbols[sym]);
+                succ[sym][q] = to == null ? dead : index.get(to);
+            }
+            succ[sym][dead] = dead;
+        }
+        start = dfa.getStartState() == null ? dead : index.get(dfa.getStartState());
+    }
+
+    /**
+     * @return the minimal DFA accepting the same language
+     */
+    public DFA minimize() {
+        if (dfa.getStartState() == null) {
+            return new DFA();
+        }
+        refine();
+        return build();
+    }
+
+    /**
+     * Splits the final and non-final states until the partition is stable
+     */
+    private void refine() {
+        int n = states.size() + 1;
+        int k = symbols.length;
+        elems = new int[n];
+        loc = new int[n];
+        blockOf = new int[n];
+        first = new int[n];
+        end = new int[n];
+        int[] marked = new int[n];
+        boolean[] waiting = new boolean[n];
+
+        //initial partition: final states first, then the rest including the dead state
+        int pos = 0;
+        for (int q = 0; q < n - 1; q++) {
+            if (states.get(q).isFinal()) {
+                elems[pos++] = q;
+            }
+        }
+        int finalCount = pos;
+        for (int q = 0; q < n; q++) {
+            if (q == n - 1 || !states.get(q).isFinal()) {
+                elems[pos++] = q;
+            }
+        }
+        blocks = 0;
+        if (finalCount > 0) {
+            first[blocks] = 0;
+            end[blocks++] = finalCount;
+        }
+        first[blocks] = finalCount;
+        end[blocks++] = n;
+        for (int b = 0; b < blocks; b++) {
+            for (int i = first[b]; i < end[b]; i++) {
+                loc[elems[i]] = i;
+                blockOf[elems[i]] = b;
+            }
+        }
+
+        //inverse transitions in compressed rows: the predecessors of q on sym
+        //are pred[sym][predStart[sym][q] .. predStart[sym][q + 1])
+        int[][] predStart = new int[k][n + 1];
+        int[][] pred = new int[k][n];
+        for (int sym = 0; sym < k; sym++) {
+            for (int q = 0; q < n; q++) {
+                predStart[sym][succ[sym][q] + 1]++;
+            }
+            for (int q = 0; q < n; q++) {
+                predStart[sym][q + 1] += predStart[sym][q];
+            }
+            int[] fill = predStart[sym].clone();
+            for (int q = 0; q < n; q++) {
+                pred[sym][fill[succ[sym][q]]++] = q;
+            }
+        }
+
+        //the smaller initial block is enough as the first splitter
+        int[] work = new int[n];
+        int workSize = 0;
+        int smaller = blocks == 1 || end[0] - first[0] <= end[1] - first[1] ? 0 : 1;
+        work[workSize++] = smaller;
+        waiting[smaller] = true;
+
+        int[] splitter = new int[n];
+        int[] touched = new int[n];
+        while (workSize > 0) {
+            int a = work[--workSize];
+            waiting[a] = false;
+            //copy the splitter since its block may be split while it is used
+            int size = end[a] - first[a];
+            System.arraycopy(elems, first[a], splitter, 0, size);
+
+            for (int sym = 0; sym < k; sym++) {
+                int touchedCount = 0;
+                //move every predecessor to the marked front of its block
+                for (int i = 0; i < size; i++) {
+                    int q = splitter[i];
+                    for (int j = predStart[sym][q]; j < predStart[sym][q + 1]; j++) {
+                        int p = pred[sym][j];
+                        int b = blockOf[p];
+                        if (marked[b] == 0) {
+                            touched[touchedCount++] = b;
+                        }
+                        swap(loc[p], first[b] + marked[b]);
+                        marked[b]++;
+                    }
+                }
+                //split every block that was only partly marked
+                for (int t = 0; t < touchedCount; t++) {
+                    int b = touched[t];
+                    int m = marked[b];
+                    marked[b] = 0;
+                    if (m == end[b] - first[b]) {
+                        continue;
+                    }
+                    int c = blocks++;
+                    first[c] = first[b];
+                    end[c] = first[b] + m;
+                    first[b] = end[c];
+                    for (int i = first[c]; i < end[c]; i++) {
+                        blockOf[elems[i]] = c;
+                    }
+                    if (waiting[b] || end[c] - first[c] <= end[b] - first[b]) {
+                        work[workSize++] = c;
+                        waiting[c] = true;
+                    } else {
+                        work[workSize++] = b;
+                        waiting[b] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the quotient DFA. Each block is named after its state that was
+     * added to the DFA first and the block of the dead state is left out
+     * unless it holds states of the original DFA.
+     *
+     * @return the minimal DFA
+     */
+    private DFA build() {
+        int n = states.size();
+        //representative state of every block, the dead state only if nothing else is in the block
+        int[] rep = new int[blocks];
+        for (int b = 0; b < blocks; b++) {
+            rep[b] = n;
+            for (int i = first[b]; i < end[b]; i++) {
+                rep[b] = Math.min(rep[b], elems[i]);
+            }
+        }
+        DFA min = new DFA(blocks);
+        DFAState[] created = new DFAState[blocks];
+        int startBlock = blockOf[start];
+        for (int q = 0; q < n; q++) {
+            int b = blockOf[q];
+            if (rep[b] == q) {
+                DFAState orig = states.get(q);
+                created[b] = new DFAState(orig.getName(), orig.isFinal());
+                if (b == startBlock) {
+                    min.addStartState(created[b]);
+                } else {
+                    min.addState(created[b]);
+                }
+            }
+        }
+        for (char c : symbols) {
+            min.addSymbol(c);
+        }
+        for (int q = 0; q < n; q++) {
+            if (rep[blockOf[q]] != q) {
+                continue;
+            }
+            for (int sym = 0; sym < symbols.length; sym++) {
+                DFAState to = created[blockOf[succ[sym][q]]];
+                if (to != null) {
+                    created[blockOf[q]].addTransition(symbols[sym], to);
+                }
+            }
+        }
+        return min;
+    }
+
+    /**
+     * @param i a position in elems
+     * @param j another position in elems
+     */
+    private void swap(int i, int j) {
+        int qi = elems[i];
+        int qj = elems[j];
+        elems[i] = qj;
+        elems[j] = qi;
+        loc[qj] = i;
+        loc[qi] = j;
+    }
+
+    /**
+     * @param dfa a DFA
+     * @return the states reachable from the start state, in the order they were added
+     */
+    static List<DFAState> reachable(DFA dfa) {
+        List<DFAState> ret = new ArrayList<>();
+        if (dfa.getStartState() == null) {
+            return ret;
+        }
+        Set<DFAState> seen = new HashSet<>();
+        List<DFAState> stack = new ArrayList<>();
+        stack.add(dfa.getStartState());
+        seen.add(dfa.getStartState());
+        while (!stack.isEmpty()) {
+            DFAState s = stack.remove(stack.size() - 1);
+            for (char c : dfa.getABC()) {
+                DFAState to = s.transition(c);
+                if (to != null && seen.add(to)) {
+                    stack.add(to);
+                }
+            }
+        }
+        for (DFAState s : dfa.getStates()) {
+            if (seen.contains(s)) {
+                ret.add(s);
+            }
+        }
+        return ret;
+    }
+}
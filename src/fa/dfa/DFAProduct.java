@@ -0,0 +1,185 @@
+package fa.dfa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Product construction of two DFAs. The product states are pairs of states
+ * of the two DFAs and only the pairs reachable from the pair of start states
+ * are built, so the product is often far smaller than the full cross product.
+ * The alphabet of the product is the union of both alphabets, and a missing
+ * transition of either DFA goes to its implicit dead state, so the product
+ * has a transition on every symbol from every state.
+ * <p>
+ * A product state is named (p, q) after the states of the pair, "-" standing
+ * for the dead state.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+final class DFAProduct {
+
+    /**
+     * How the product decides whether a pair is final
+     */
+    enum Op {
+        INTERSECTION, UNION, DIFFERENCE, COMPLEMENT;
+
+        /**
+         * @param left  true if the state of the first DFA is final
+         * @param right true if the state of the second DFA is final
+         * @return true if the pair is final
+         */
+        boolean isFinal(boolean left, boolean right) {
+            switch (this) {
+                case INTERSECTION:
+                    return left && right;
+                case UNION:
+                    return left || right;
+                case DIFFERENCE:
+                    return left && !right;
+                default:
+                    return !left;
+            }
+        }
+    }
+
+    private static final String DEAD = "-";
+
+    private final DFA left;
+    //null for the complement, which is the product with the empty DFA
+    private final DFA right;
+    private final Op op;
+    private final char[] symbols;
+    //dense numbers of the states of both DFAs, the dead state of each is its number of states
+    private final Map<DFAState, Integer> leftIndex;
+    private final Map<DFAState, Integer> rightIndex;
+
+    /**
+     * @param left  the first DFA
+     * @param right the second DFA, null for the complement of the first
+     * @param op    the operation
+     */
+    DFAProduct(DFA left, DFA right, Op op) {
+        this.left = left;
+        this.right = right;
+        this.op = op;
+        Set<Character> abc = new LinkedHashSet<>(left.getABC());
+        if (right != null) {
+            abc.addAll(right.getABC());
+        }
+        symbols = new char[abc.size()];
+        int k = 0;
+        for (char c : abc) {
+            symbols[k++] = c;
+        }
+        leftIndex = index(left);
+        rightIndex = index(right);
+    }
+
+    /**
+     * Breadth first search over the pairs reachable from the pair of start states
+     *
+     * @return the product DFA
+     */
+    DFA build() {
+        DFA product = new DFA();
+        for (char c : symbols) {
+            product.addSymbol(c);
+        }
+        if (left.getStartState() == null && (right == null || right.getStartState() == null)) {
+            //neither DFA has a state, the empty language and its complement need one state
+            product.addStartState(new DFAState(DEAD, op == Op.COMPLEMENT));
+            for (char c : symbols) {
+                product.getStartState().addTransition(c, product.getStartState());
+            }
+            return product;
+        }
+        List<DFAState[]> pairs = new ArrayList<>();
+        Map<Long, DFAState> created = new HashMap<>();
+        Set<String> names = new HashSet<>();
+        DFAState[] start = {left.getStartState(), right == null ? null : right.getStartState()};
+        DFAState first = pair(start, pairs, created, names);
+        product.addStartState(first);
+        for (int i = 0; i < pairs.size(); i++) {
+            DFAState[] curr = pairs.get(i);
+            DFAState from = created.get(key(curr));
+            for (char c : symbols) {
+                DFAState[] next = {step(curr[0], c), step(curr[1], c)};
+                DFAState to = created.get(key(next));
+                if (to == null) {
+                    to = pair(next, pairs, created, names);
+                    product.addState(to);
+                }
+                from.addTransition(c, to);
+            }
+        }
+        return product;
+    }
+
+    /**
+     * Creates the product state of a pair that was not seen before
+     *
+     * @param pair    the states of the pair, null for a dead state
+     * @param pairs   the pairs found so far, doubling as the queue
+     * @param created product state of every pair found so far
+     * @param names   names given so far
+     * @return the new product state
+     */
+    private DFAState pair(DFAState[] pair, List<DFAState[]> pairs, Map<Long, DFAState> created, Set<String> names) {
+        boolean isFinal = op.isFinal(pair[0] != null && pair[0].isFinal(), pair[1] != null && pair[1].isFinal());
+        String name = right == null ? nameOf(pair[0])
+                : "(" + nameOf(pair[0]) + ", " + nameOf(pair[1]) + ")";
+        //state names may contain the separators, keep product names unique anyway
+        if (!names.add(name)) {
+            name = name + "#" + pairs.size();
+            names.add(name);
+        }
+        DFAState state = new DFAState(name, isFinal);
+        pairs.add(pair);
+        created.put(key(pair), state);
+        return state;
+    }
+
+    /**
+     * @param pair the states of a pair, null for a dead state
+     * @return a number identifying the pair
+     */
+    private long key(DFAState[] pair) {
+        long l = pair[0] == null ? leftIndex.size() : leftIndex.get(pair[0]);
+        long r = pair[1] == null ? rightIndex.size() : rightIndex.get(pair[1]);
+        return l * (rightIndex.size() + 1) + r;
+    }
+
+    /**
+     * @param s a state, null for the dead state
+     * @param c a symbol
+     * @return where s goes on c, null for the dead state
+     */
+    private static DFAState step(DFAState s, char c) {
+        return s == null ? null : s.transition(c);
+    }
+
+    private static String nameOf(DFAState s) {
+        return s == null ? DEAD : s.getName();
+    }
+
+    /**
+     * @param dfa a DFA, may be null
+     * @return a dense number for every state of the DFA
+     */
+    private static Map<DFAState, Integer> index(DFA dfa) {
+        Map<DFAState, Integer> ret = new HashMap<>();
+        if (dfa != null) {
+            for (DFAState s : dfa.getStates()) {
+                ret.put(s, ret.size());
+            }
+        }
+        return ret;
+    }
+}
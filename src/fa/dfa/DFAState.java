@@ -2,7 +2,9 @@ package fa.dfa;
 
 import fa.State;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.function.Supplier;
 
 /**
  * Jan 19, 2017
@@ -16,7 +18,14 @@ public class DFAState extends State {
 
 
     private HashMap<Character, DFAState> delta;//delta
+    //transitions on ranges of symbols, sorted and disjoint: range i runs from rangeFirst[i]
+    //to rangeLast[i] and goes to rangeTo[i], a symbol in delta is looked up there first
+    private char[] rangeFirst;
+    private char[] rangeLast;
+    private DFAState[] rangeTo;
+    private int ranges;
     private final boolean isFinal;//remembers its type
+    private final Supplier<String> nameSource;//builds the name on every use, null if the name is stored
 
     /**
      * Default constructor
@@ -26,6 +35,7 @@ public class DFAState extends State {
     public DFAState(String name) {
         initDefault(name);
         isFinal = false;
+        nameSource = null;
     }
 
     /**
@@ -37,6 +47,21 @@ public class DFAState extends State {
     public DFAState(String name, boolean isFinal) {
         initDefault(name);
         this.isFinal = isFinal;
+        nameSource = null;
+    }
+
+    /**
+     * Constructor for a state whose name is built each time it is asked
+     * for instead of being stored, for automata with many states whose
+     * names are long and rarely needed
+     *
+     * @param nameSource builds the state name, it must give the same name every time
+     * @param isFinal    the type of state: true - final, false - nonfinal.
+     */
+    public DFAState(Supplier<String> nameSource, boolean isFinal) {
+        initDefault(null);
+        this.isFinal = isFinal;
+        this.nameSource = nameSource;
     }
 
     private void initDefault(String name) {
@@ -44,6 +69,23 @@ public class DFAState extends State {
         delta = new HashMap<Character, DFAState>();
     }
 
+    @Override
+    public String getName() {
+        return nameSource == null ? name : nameSource.get();
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    /**
+     * @return true if the name is built on demand rather than stored
+     */
+    boolean hasLazyName() {
+        return nameSource != null;
+    }
+
     /**
      * Accessor for the state type
      *
@@ -72,12 +114,101 @@ public class DFAState extends State {
      * @return the new state
      */
     public DFAState getTo(char symb) {
-        DFAState ret = delta.get(symb);
+        DFAState ret = transition(symb);
         if (ret == null) {
-            System.err.println("ERROR: DFAState.getTo(char symb) returns null on " + symb + " from " + name);
+            System.err.println("ERROR: DFAState.getTo(char symb) returns null on " + symb + " from " + getName());
             System.exit(2);
         }
-        return delta.get(symb);
+        return ret;
+    }
+
+    /**
+     * Retrieves the state that <code>this</code> transitions to
+     * on the given symbol without treating a missing transition as an error
+     *
+     * @param symb - the alphabet symbol
+     * @return the new state or null if there is no transition on symb
+     */
+    DFAState transition(char symb) {
+        DFAState ret = delta.get(symb);
+        if (ret != null || ranges == 0) {
+            return ret;
+        }
+        //last range starting at or before the symbol
+        int lo = 0;
+        int hi = ranges - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (rangeFirst[mid] <= symb) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return rangeFirst[lo] <= symb && symb <= rangeLast[lo] ? rangeTo[lo] : null;
+    }
+
+    /**
+     * Adds a transition on every symbol from first to last, kept as one
+     * range. It replaces the transitions added before on those symbols.
+     *
+     * @param first   first symbol of the range
+     * @param last    last symbol of the range, inclusive
+     * @param toState to DFA state
+     */
+    void addTransitions(char first, char last, DFAState toState) {
+        if (!delta.isEmpty()) {
+            delta.keySet().removeIf(c -> first <= c && c <= last);
+        }
+        if (ranges == 0) {
+            rangeFirst = new char[4];
+            rangeLast = new char[4];
+            rangeTo = new DFAState[4];
+        } else if (first <= rangeLast[ranges - 1]) {
+            //keep the parts of the ranges the new one does not cover, they stay sorted
+            char[] oldFirst = rangeFirst;
+            char[] oldLast = rangeLast;
+            DFAState[] oldTo = rangeTo;
+            int old = ranges;
+            rangeFirst = new char[old + 2];
+            rangeLast = new char[old + 2];
+            rangeTo = new DFAState[old + 2];
+            ranges = 0;
+            for (int i = 0; i < old; i++) {
+                if (oldFirst[i] < first) {
+                    appendRange(oldFirst[i], (char) Math.min(oldLast[i], first - 1), oldTo[i]);
+                }
+                if (oldLast[i] > last) {
+                    appendRange((char) Math.max(oldFirst[i], last + 1), oldLast[i], oldTo[i]);
+                }
+            }
+        }
+        //the new range goes after the ranges before it
+        int at = ranges;
+        while (at > 0 && rangeFirst[at - 1] > last) {
+            at--;
+        }
+        appendRange(first, last, toState);
+        if (at < ranges - 1) {
+            System.arraycopy(rangeFirst, at, rangeFirst, at + 1, ranges - 1 - at);
+            System.arraycopy(rangeLast, at, rangeLast, at + 1, ranges - 1 - at);
+            System.arraycopy(rangeTo, at, rangeTo, at + 1, ranges - 1 - at);
+            rangeFirst[at] = first;
+            rangeLast[at] = last;
+            rangeTo[at] = toState;
+        }
+    }
+
+    private void appendRange(char first, char last, DFAState toState) {
+        if (ranges == rangeFirst.length) {
+            rangeFirst = Arrays.copyOf(rangeFirst, ranges * 2);
+            rangeLast = Arrays.copyOf(rangeLast, ranges * 2);
+            rangeTo = Arrays.copyOf(rangeTo, ranges * 2);
+        }
+        rangeFirst[ranges] = first;
+        rangeLast[ranges] = last;
+        rangeTo[ranges] = toState;
+        ranges++;
     }
 
 
@@ -0,0 +1,178 @@
+package fa.dfa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Matches every line of a file against a CompiledDFA. The file is memory
+ * mapped window by window and its UTF-8 bytes are fed to a DFACursor one by
+ * one, so no String is made per line. A byte sequence that is not UTF-8
+ * counts as a symbol outside the alphabet. The answer for each line is
+ * written as "yes" or "no" to a buffered output channel. Lines may end in
+ * "\n" or "\r\n" and, as with DFA.accepts, a line holding only "e" stands for
+ * the empty string. Like the Scanner loop of NFADriver, lines at the end of
+ * the file that hold nothing but ASCII whitespace get no answer.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public class LineMatcher {
+    //bytes mapped at once, a line may span several windows
+    private static final long WINDOW = 1L << 30;
+    //size of the output buffer
+    private static final int OUT_BUFFER = 1 << 16;
+    private static final byte[] YES = {'y', 'e', 's', '\n'};
+    private static final byte[] NO = {'n', 'o', '\n'};
+
+    private final CompiledDFA dfa;
+
+    /**
+     * @param dfa the DFA to match the lines against
+     */
+    public LineMatcher(CompiledDFA dfa) {
+        this.dfa = dfa;
+    }
+
+    /**
+     * @param input the file of newline separated strings
+     * @param out   where the answers are written, it is not closed
+     * @return the number of lines matched
+     * @throws IOException if the file cannot be read or the answers cannot be written
+     */
+    public long matchLines(Path input, WritableByteChannel out) throws IOException {
+        ByteBuffer answers = ByteBuffer.allocateDirect(OUT_BUFFER);
+        long lines = 0;
+        //answers of blank lines, written once a line that is not blank follows
+        BitSet held = new BitSet();
+        int heldCount = 0;
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            long size = channel.size();
+            Line line = new Line();
+            for (long pos = 0; pos < size; pos += WINDOW) {
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(WINDOW, size - pos));
+                int limit = buf.limit();
+                for (int i = 0; i < limit; i++) {
+                    int b = buf.get(i) & 0xFF;
+                    if (b == '\n') {
+                        boolean blank = line.isBlank();
+                        boolean accepted = line.end();
+                        if (blank) {
+                            held.set(heldCount++, accepted);
+                        } else {
+                            for (int h = 0; h < heldCount; h++) {
+                                write(out, answers, held.get(h));
+                            }
+                            lines += heldCount;
+                            held.clear();
+                            heldCount = 0;
+                            write(out, answers, accepted);
+                            lines++;
+                        }
+                    } else {
+                        line.add(b);
+                    }
+                }
+            }
+            //the last line may not end in a newline, blank lines before it still count
+            if (!line.isBlank()) {
+                for (int h = 0; h < heldCount; h++) {
+                    write(out, answers, held.get(h));
+                }
+                lines += heldCount;
+                write(out, answers, line.end());
+                lines++;
+            }
+        }
+        answers.flip();
+        while (answers.hasRemaining()) {
+            out.write(answers);
+        }
+        return lines;
+    }
+
+    /**
+     * Matching state of the line being read, the cursor does the decoding
+     */
+    private final class Line {
+        private final DFACursor cursor = dfa.cursor();
+        //bytes given to the cursor and whether the first one was 'e'
+        private long length;
+        private boolean onlyE;
+        //a '\r' is held back until it is known not to end the line
+        private boolean carriageReturn;
+        //true while the line holds nothing but ASCII whitespace
+        private boolean blank = true;
+
+        /**
+         * @param b the next byte of the line, not a '\n'
+         */
+        private void add(int b) {
+            if (b >= 0x80 || !Character.isWhitespace(b)) {
+                blank = false;
+            }
+            if (carriageReturn) {
+                feed('\r');
+                carriageReturn = false;
+            }
+            if (b == '\r') {
+                carriageReturn = true;
+            } else {
+                feed(b);
+            }
+        }
+
+        private void feed(int b) {
+            if (length == 0) {
+                onlyE = b == 'e';
+            }
+            cursor.feedByte(b);
+            length++;
+        }
+
+        /**
+         * @return true if nothing but ASCII whitespace has been read since the last line ended
+         */
+        private boolean isBlank() {
+            return blank;
+        }
+
+        /**
+         * Ends the line, a held back '\r' is dropped as part of "\r\n"
+         *
+         * @return true if the line is accepted
+         */
+        private boolean end() {
+            boolean accepted = onlyE && length == 1 ? dfa.isFinalRow(dfa.startRow()) : cursor.finish();
+            cursor.reset();
+            length = 0;
+            onlyE = false;
+            carriageReturn = false;
+            blank = true;
+            return accepted;
+        }
+    }
+
+    /**
+     * @param out      the output channel
+     * @param answers  the output buffer, written to out when it is full
+     * @param accepted the answer for a line
+     * @throws IOException if the answers cannot be written
+     */
+    private static void write(WritableByteChannel out, ByteBuffer answers, boolean accepted) throws IOException {
+        byte[] answer = accepted ? YES : NO;
+        if (answers.remaining() < answer.length) {
+            answers.flip();
+            while (answers.hasRemaining()) {
+                out.write(answers);
+            }
+            answers.clear();
+        }
+        answers.put(answer);
+    }
+}
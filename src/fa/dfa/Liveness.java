@@ -0,0 +1,92 @@
+package fa.dfa;
+
+/**
+ * Finds the states a final state can be reached from by walking the
+ * transitions backwards from the final states. DFA, CompiledDFA and
+ * PackedDFA each hand their own form of the transitions to the one walk.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+final class Liveness {
+    /**
+     * The transitions of an automaton with states numbered from 0
+     */
+    interface Graph {
+        /**
+         * @param q a state
+         * @return number of transitions out of q
+         */
+        int degree(int q);
+
+        /**
+         * @param q a state
+         * @param i a transition of q, below degree(q)
+         * @return the state it leads to or -1 if it leads out of the automaton
+         */
+        int target(int q, int i);
+    }
+
+    private Liveness() {
+    }
+
+    /**
+     * @param n      number of states
+     * @param finals bit q is set if state q is final
+     * @param graph  the transitions
+     * @return bit q is set if a final state can be reached from q
+     */
+    static long[] live(int n, long[] finals, Graph graph) {
+        //predecessors in compressed rows: the ones of q are pred[predStart[q] .. predStart[q + 1])
+        int[] predStart = new int[n + 1];
+        for (int q = 0; q < n; q++) {
+            for (int i = graph.degree(q) - 1; i >= 0; i--) {
+                int to = graph.target(q, i);
+                if (to >= 0) {
+                    predStart[to + 1]++;
+                }
+            }
+        }
+        for (int q = 0; q < n; q++) {
+            predStart[q + 1] += predStart[q];
+        }
+        int[] pred = new int[predStart[n]];
+        int[] fill = predStart.clone();
+        for (int q = 0; q < n; q++) {
+            for (int i = graph.degree(q) - 1; i >= 0; i--) {
+                int to = graph.target(q, i);
+                if (to >= 0) {
+                    pred[fill[to]++] = q;
+                }
+            }
+        }
+        long[] ret = finals.clone();
+        int[] stack = new int[n];
+        int size = 0;
+        for (int q = 0; q < n; q++) {
+            if ((finals[q >>> 6] & (1L << q)) != 0) {
+                stack[size++] = q;
+            }
+        }
+        while (size > 0) {
+            int q = stack[--size];
+            for (int j = predStart[q]; j < predStart[q + 1]; j++) {
+                int p = pred[j];
+                if ((ret[p >>> 6] & (1L << p)) == 0) {
+                    ret[p >>> 6] |= 1L << p;
+                    stack[size++] = p;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param bits a bitmap of states
+     * @param q    a state
+     * @return true if bit q is set
+     */
+    static boolean contains(long[] bits, int q) {
+        return (bits[q >>> 6] & (1L << q)) != 0;
+    }
+}
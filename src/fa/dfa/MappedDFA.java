@@ -0,0 +1,152 @@
+package fa.dfa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A CompiledDFA read straight out of a memory mapped file written by
+ * CompiledDFA.write. The tables are views of the mapping, so opening a
+ * file costs a header check and nothing is copied onto the heap.
+ * <p>
+ * File layout, all numbers little endian:
+ * <pre>
+ *   int magic 'CDFA', int version, int classes, int states, int start row,
+ *   int number of code point ranges, 8 bytes of padding,
+ *   long[(states + 63) / 64] final state bitmap,
+ *   int[256] classes of the low code points, int[ranges] range starts,
+ *   int[ranges] range classes, int[states * classes] transitions
+ * </pre>
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public final class MappedDFA {
+    static final int MAGIC = 0x43444641;
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 32;
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final IntBuffer lowClass;
+    private final IntBuffer rangeStart;
+    private final IntBuffer rangeClass;
+    private final int classes;
+    private final IntBuffer delta;
+    private final LongBuffer finals;
+    private final int start;
+    private final int deadRow;
+
+    private MappedDFA(ByteBuffer buf) throws IOException {
+        buf.order(ORDER);
+        if (buf.limit() < HEADER_BYTES || buf.getInt(0) != MAGIC) {
+            throw new IOException("not a compiled DFA file");
+        }
+        if (buf.getInt(4) != VERSION) {
+            throw new IOException("unsupported compiled DFA file version " + buf.getInt(4));
+        }
+        classes = buf.getInt(8);
+        int states = buf.getInt(12);
+        start = buf.getInt(16);
+        int ranges = buf.getInt(20);
+        int finalWords = (states + 63) >>> 6;
+        long size = HEADER_BYTES + 8L * finalWords + 4L * CompiledDFA.LOW + 8L * ranges + 4L * states * classes;
+        if (classes < 1 || states < 1 || ranges < 1 || buf.limit() != size) {
+            throw new IOException("corrupt compiled DFA file");
+        }
+        int pos = HEADER_BYTES;
+        finals = slice(buf, pos, 8 * finalWords).asLongBuffer();
+        pos += 8 * finalWords;
+        lowClass = slice(buf, pos, 4 * CompiledDFA.LOW).asIntBuffer();
+        pos += 4 * CompiledDFA.LOW;
+        rangeStart = slice(buf, pos, 4 * ranges).asIntBuffer();
+        pos += 4 * ranges;
+        rangeClass = slice(buf, pos, 4 * ranges).asIntBuffer();
+        pos += 4 * ranges;
+        delta = slice(buf, pos, 4 * states * classes).asIntBuffer();
+        //CompiledDFA writes the dead state last
+        deadRow = (states - 1) * classes;
+    }
+
+    /**
+     * Maps a file written by CompiledDFA.write
+     *
+     * @param file the file
+     * @return the DFA backed by the mapping
+     * @throws IOException if the file cannot be read or is not a compiled DFA
+     */
+    public static MappedDFA open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("compiled DFA file too large: " + channel.size() + " bytes");
+            }
+            //the mapping stays valid after the channel is closed
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedDFA(buf);
+        }
+    }
+
+    /**
+     * Simulates the DFA on the input. Like DFA.accepts the single
+     * character string "e" stands for the empty string.
+     *
+     * @param input the input string
+     * @return true if the input is in the language of the DFA
+     */
+    public boolean accepts(CharSequence input) {
+        int len = input.length();
+        if (len == 1 && input.charAt(0) == 'e') {
+            len = 0;
+        }
+        int row = start;
+        for (int i = 0; i < len && row != deadRow; i++) {
+            char c = input.charAt(i);
+            row = delta.get(row + (c < CompiledDFA.LOW ? lowClass.get(c) : rangeClassOf(c)));
+        }
+        int state = row / classes;
+        return (finals.get(state >>> 6) & (1L << state)) != 0;
+    }
+
+    /**
+     * @return number of states including the dead state
+     */
+    public int getStateCount() {
+        return delta.limit() / classes;
+    }
+
+    /**
+     * @param codePoint a code point of at least 256
+     * @return the class of the range holding the code point
+     */
+    private int rangeClassOf(int codePoint) {
+        int lo = 0;
+        int hi = rangeStart.limit() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (rangeStart.get(mid) <= codePoint) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return rangeClass.get(lo);
+    }
+
+    /**
+     * @param buf    the whole file
+     * @param offset start of the part
+     * @param length length of the part in bytes
+     * @return the part as a buffer of its own in file byte order
+     */
+    private static ByteBuffer slice(ByteBuffer buf, int offset, int length) {
+        ByteBuffer dup = buf.duplicate();
+        dup.position(offset);
+        dup.limit(offset + length);
+        return dup.slice().order(ORDER);
+    }
+}
@@ -0,0 +1,269 @@
+package fa.dfa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compressed table form of a DFA for wide alphabets whose rows are mostly
+ * the same target. Symbols that every state treats the same way share a
+ * symbol class as in CompiledDFA. Every state has a default target, the one
+ * most of its classes lead to, and only the other transitions are stored.
+ * Those are packed by row displacement: the exceptions of state s sit at
+ * base[s] + cls of one shared array, the rows placed so they do not collide,
+ * and a check array records which state owns each slot. A lookup is one
+ * probe of the shared array and a fall back to the default, so it stays O(1).
+ * <p>
+ * The construction never holds a full row for more than one state at a time.
+ * Missing transitions, symbols outside the alphabet and states that cannot
+ * reach a final state all lead to a dead state, which ends matching early.
+ * Instances never change after construction and may be shared between threads.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public final class PackedDFA {
+    //classOf[c] is the symbol class of c or -1 if c is not in the alphabet
+    private final int[] classOf;
+    //next[base[s] + cls] is where s goes on cls if check of that slot is s
+    private final int[] base;
+    private final int[] next;
+    private final int[] check;
+    //where s goes on every class without an entry of its own
+    private final int[] defaults;
+    private final long[] finals;
+    private final int start;
+    private final int dead;
+
+    /**
+     * @param dfa the DFA to pack, later changes to it are not seen
+     */
+    public PackedDFA(DFA dfa) {
+        //number the states in the order they were added, the dead state goes last
+        DFAState[] states = dfa.getStates().toArray(new DFAState[0]);
+        Map<DFAState, Integer> index = new HashMap<>();
+        for (DFAState s : states) {
+            index.put(s, index.size());
+        }
+        dead = states.length;
+        int n = dead + 1;
+        finals = new long[(n + 63) >>> 6];
+        for (int q = 0; q < dead; q++) {
+            if (states[q].isFinal()) {
+                finals[q >>> 6] |= 1L << q;
+            }
+        }
+
+        //split the symbols into classes one state at a time, two symbols stay
+        //together as long as every state seen so far sends them to the same place
+        char[] symbols = new char[dfa.getABC().size()];
+        int k = 0;
+        int max = -1;
+        for (char c : dfa.getABC()) {
+            symbols[k++] = c;
+            max = Math.max(max, c);
+        }
+        int[] symbolClass = new int[k];
+        int classes = k == 0 ? 0 : 1;
+        Map<Long, Integer> split = new HashMap<>();
+        for (DFAState s : states) {
+            split.clear();
+            for (int sym = 0; sym < k; sym++) {
+                DFAState to = s.transition(symbols[sym]);
+                long key = ((long) symbolClass[sym] << 32) | (to == null ? dead : index.get(to));
+                Integer cls = split.get(key);
+                if (cls == null) {
+                    cls = split.size();
+                    split.put(key, cls);
+                }
+                symbolClass[sym] = cls;
+            }
+            classes = split.size();
+        }
+        classOf = new int[max + 1];
+        Arrays.fill(classOf, -1);
+        //a symbol of each class to read the rows through
+        char[] representative = new char[classes];
+        for (int sym = 0; sym < k; sym++) {
+            classOf[symbols[sym]] = symbolClass[sym];
+            representative[symbolClass[sym]] = symbols[sym];
+        }
+
+        //defaults and exceptions as they are, the dead state leads only to itself
+        defaults = new int[n];
+        int[][] exceptions = new int[n][];
+        int[] row = new int[classes];
+        for (int q = 0; q < dead; q++) {
+            for (int cls = 0; cls < classes; cls++) {
+                DFAState to = states[q].transition(representative[cls]);
+                row[cls] = to == null ? dead : index.get(to);
+            }
+            compress(row, q, exceptions);
+        }
+        defaults[dead] = dead;
+        exceptions[dead] = new int[0];
+
+        //the walk only needs the default and the exceptions, the default is always
+        //taken by at least one class
+        long[] live = Liveness.live(n, finals, new Liveness.Graph() {
+            @Override
+            public int degree(int q) {
+                return 1 + exceptions[q].length / 2;
+            }
+
+            @Override
+            public int target(int q, int i) {
+                return i == 0 ? defaults[q] : exceptions[q][2 * i - 1];
+            }
+        });
+
+        //send the states that cannot reach a final state to the dead state, which
+        //often turns many exceptions into the default
+        for (int q = 0; q < dead; q++) {
+            Arrays.fill(row, defaults[q]);
+            int[] pairs = exceptions[q];
+            for (int i = 0; i < pairs.length; i += 2) {
+                row[pairs[i]] = pairs[i + 1];
+            }
+            for (int cls = 0; cls < classes; cls++) {
+                if (!Liveness.contains(live, row[cls])) {
+                    row[cls] = dead;
+                }
+            }
+            compress(row, q, exceptions);
+        }
+
+        //place the rows with the most exceptions first, each at the lowest base that fits
+        Integer[] order = new Integer[n];
+        for (int q = 0; q < n; q++) {
+            order[q] = q;
+        }
+        Arrays.sort(order, (a, b) -> exceptions[b].length - exceptions[a].length);
+        base = new int[n];
+        int[] slotNext = new int[Math.max(16, classes)];
+        int[] slotCheck = new int[slotNext.length];
+        Arrays.fill(slotCheck, -1);
+        int size = 0;
+        //slots below this are all taken
+        int firstFree = 0;
+        for (int q : order) {
+            int[] pairs = exceptions[q];
+            if (pairs.length == 0) {
+                continue;
+            }
+            int b = Math.max(0, firstFree - pairs[0]);
+            while (!fits(slotCheck, pairs, b)) {
+                b++;
+            }
+            int end = b + pairs[pairs.length - 2] + 1;
+            if (end > slotNext.length) {
+                int length = Math.max(end, 2 * slotNext.length);
+                slotNext = Arrays.copyOf(slotNext, length);
+                int old = slotCheck.length;
+                slotCheck = Arrays.copyOf(slotCheck, length);
+                Arrays.fill(slotCheck, old, length, -1);
+            }
+            for (int i = 0; i < pairs.length; i += 2) {
+                slotNext[b + pairs[i]] = pairs[i + 1];
+                slotCheck[b + pairs[i]] = q;
+            }
+            base[q] = b;
+            size = Math.max(size, end);
+            while (firstFree < slotCheck.length && slotCheck[firstFree] >= 0) {
+                firstFree++;
+            }
+        }
+        next = Arrays.copyOf(slotNext, size);
+        check = Arrays.copyOf(slotCheck, size);
+
+        int first = dfa.getStartState() == null ? dead : index.get(dfa.getStartState());
+        start = Liveness.contains(live, first) ? first : dead;
+    }
+
+    /**
+     * Picks the most common target of a row as the default of the state and
+     * keeps the other entries as (class, target) pairs in class order
+     *
+     * @param row        the target of the state on every class
+     * @param q          the state
+     * @param exceptions where the pairs of the state are stored
+     */
+    private void compress(int[] row, int q, int[][] exceptions) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        int best = dead;
+        int bestCount = 0;
+        for (int to : row) {
+            int c = counts.merge(to, 1, Integer::sum);
+            if (c > bestCount) {
+                best = to;
+                bestCount = c;
+            }
+        }
+        defaults[q] = best;
+        int[] pairs = new int[2 * (row.length - bestCount)];
+        int p = 0;
+        for (int cls = 0; cls < row.length; cls++) {
+            if (row[cls] != best) {
+                pairs[p++] = cls;
+                pairs[p++] = row[cls];
+            }
+        }
+        exceptions[q] = pairs;
+    }
+
+    /**
+     * @param slotCheck owner of every slot, -1 if free
+     * @param pairs     the exceptions of a row as (class, target) pairs in class order
+     * @param b         a candidate base
+     * @return true if the row can be placed at the base
+     */
+    private static boolean fits(int[] slotCheck, int[] pairs, int b) {
+        for (int i = 0; i < pairs.length; i += 2) {
+            int slot = b + pairs[i];
+            if (slot < slotCheck.length && slotCheck[slot] >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Simulates the DFA on the input. Like DFA.accepts the single
+     * character string "e" stands for the empty string.
+     *
+     * @param input the input string
+     * @return true if the input is in the language of the DFA
+     */
+    public boolean accepts(CharSequence input) {
+        int len = input.length();
+        if (len == 1 && input.charAt(0) == 'e') {
+            len = 0;
+        }
+        int state = start;
+        for (int i = 0; i < len && state != dead; i++) {
+            char c = input.charAt(i);
+            int cls = c < classOf.length ? classOf[c] : -1;
+            if (cls < 0) {
+                return false;
+            }
+            int slot = base[state] + cls;
+            //a lookup past the last placed row can only hit a default
+            state = slot < check.length && check[slot] == state ? next[slot] : defaults[state];
+        }
+        return Liveness.contains(finals, state);
+    }
+
+    /**
+     * @return number of states including the dead state
+     */
+    public int getStateCount() {
+        return defaults.length;
+    }
+
+    /**
+     * @return number of slots of the packed exception table
+     */
+    public int getTableSize() {
+        return next.length;
+    }
+}
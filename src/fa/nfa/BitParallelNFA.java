@@ -0,0 +1,167 @@
+package fa.nfa;
+
+import fa.FAListener;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Bit parallel simulation of a small NFA. The set of active states is kept
+ * in one long, or a few for up to MAX_STATES states, and the step on a
+ * symbol class is looked up a byte of the set at a time: for every class,
+ * every byte position that holds states and every value of that byte the table
+ * holds the union of the steps of those eight states, eClosures included.
+ * A character then costs at most one lookup and OR per byte of the set and
+ * no run can blow up the way the subset construction can.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+final class BitParallelNFA {
+    //largest NFA simulated this way
+    static final int MAX_STATES = 256;
+    //largest table built, in longs, NFAs with more symbol classes fall back to the BitSet simulation
+    private static final long MAX_TABLE = 1 << 19;
+
+    private final TransitionTable table;
+    //longs per set of states
+    private final int words;
+    //next[cls][((chunk << 8) | b) * words + w] is word w of the step from the states of byte chunk set to b
+    private final long[][] next;
+    private final long[] finals;
+
+    /**
+     * @param table the NFA
+     * @return true if the NFA is small enough to be simulated this way
+     */
+    static boolean fits(TransitionTable table) {
+        int n = table.states.length;
+        int words = (n + 63) >>> 6;
+        return n <= MAX_STATES && (long) table.classes * ((n + 7) >>> 3) * 256 * words <= MAX_TABLE;
+    }
+
+    /**
+     * @param table the NFA, it must fit
+     * @param step  step[id][cls] is the eClosure of the targets of the state on the class, null if none
+     */
+    BitParallelNFA(TransitionTable table, BitSet[][] step) {
+        this.table = table;
+        int n = table.states.length;
+        words = Math.max(1, (n + 63) >>> 6);
+        //only the bytes that hold states get a table
+        int chunks = (n + 7) >>> 3;
+        next = new long[table.classes][chunks * 256 * words];
+        long[][] masks = new long[8][];
+        for (int cls = 0; cls < table.classes; cls++) {
+            long[] t = next[cls];
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                for (int low = 0; low < 8; low++) {
+                    int id = chunk * 8 + low;
+                    masks[low] = id < n && step[id][cls] != null ? step[id][cls].toLongArray() : null;
+                }
+                for (int b = 1; b < 256; b++) {
+                    //the entry for b is the entry without its lowest bit plus the step of that state
+                    long[] mask = masks[Integer.numberOfTrailingZeros(b)];
+                    int at = ((chunk << 8) | b) * words;
+                    int prev = ((chunk << 8) | (b & (b - 1))) * words;
+                    System.arraycopy(t, prev, t, at, words);
+                    if (mask != null) {
+                        for (int w = 0; w < mask.length; w++) {
+                            t[at + w] |= mask[w];
+                        }
+                    }
+                }
+            }
+        }
+        finals = bits(table.finals);
+    }
+
+    /**
+     * @param from     the set of states to start in, it is not modified
+     * @param s        the input
+     * @param pos      index of the first character to read
+     * @param len      index after the last character to read
+     * @param listener told how many characters were read, may be null
+     * @return true if a final state is active after reading the characters
+     */
+    boolean run(BitSet from, CharSequence s, int pos, int len, FAListener listener) {
+        return words == 1 ? runWord(from, s, pos, len, listener) : runWords(from, s, pos, len, listener);
+    }
+
+    /**
+     * run for NFAs of at most 64 states, the set is a single long
+     */
+    private boolean runWord(BitSet from, CharSequence s, int pos, int len, FAListener listener) {
+        long curr = bits(from)[0];
+        for (int i = pos; i < len; i++) {
+            int cls = table.classIndex(s.charAt(i));
+            if (cls < 0) {
+                return NFASimulator.matched(listener, i + 1 - pos, false);
+            }
+            long[] t = next[cls];
+            long step = 0;
+            //only the bytes up to the highest active state are looked up
+            for (int at = 0; curr != 0; curr >>>= 8, at += 256) {
+                step |= t[at | (int) (curr & 0xFF)];
+            }
+            curr = step;
+            if (curr == 0) {
+                return NFASimulator.matched(listener, i + 1 - pos, false);
+            }
+        }
+        return NFASimulator.matched(listener, len - pos, (curr & finals[0]) != 0);
+    }
+
+    /**
+     * run for NFAs of more than 64 states, the set is an array of longs
+     */
+    private boolean runWords(BitSet from, CharSequence s, int pos, int len, FAListener listener) {
+        long[] curr = bits(from);
+        long[] step = new long[words];
+        for (int i = pos; i < len; i++) {
+            int cls = table.classIndex(s.charAt(i));
+            if (cls < 0) {
+                return NFASimulator.matched(listener, i + 1 - pos, false);
+            }
+            long[] t = next[cls];
+            Arrays.fill(step, 0);
+            long any = 0;
+            for (int w = 0; w < words; w++) {
+                long bits = curr[w];
+                for (int chunk = w * 8; bits != 0; bits >>>= 8, chunk++) {
+                    int b = (int) (bits & 0xFF);
+                    if (b != 0) {
+                        int at = ((chunk << 8) | b) * words;
+                        for (int x = 0; x < words; x++) {
+                            step[x] |= t[at + x];
+                        }
+                    }
+                }
+            }
+            //swap the buffers
+            long[] tmp = curr;
+            curr = step;
+            step = tmp;
+            for (long word : curr) {
+                any |= word;
+            }
+            if (any == 0) {
+                return NFASimulator.matched(listener, i + 1 - pos, false);
+            }
+        }
+        for (int w = 0; w < words; w++) {
+            if ((curr[w] & finals[w]) != 0) {
+                return NFASimulator.matched(listener, len - pos, true);
+            }
+        }
+        return NFASimulator.matched(listener, len - pos, false);
+    }
+
+    /**
+     * @param set a set of state ids
+     * @return the set as exactly words longs
+     */
+    private long[] bits(BitSet set) {
+        return Arrays.copyOf(set.toLongArray(), words);
+    }
+}
@@ -0,0 +1,65 @@
+package fa.nfa;
+
+/**
+ * Thrown when a subset construction runs out of its DeterminizationBudget.
+ * It tells which limit was hit and how far the construction got, so the
+ * caller can fall back to NFA.accepts or a LazyDFA for the same NFA.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public class BudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The limit of the budget that was hit
+     */
+    public enum Limit {
+        STATES, MEMORY, TIME
+    }
+
+    private final Limit limit;
+    private final int statesDiscovered;
+    private final int subsetsExplored;
+    private final long estimatedBytes;
+    private final long elapsedNanos;
+
+    /**
+     * @param limit            the limit that was hit
+     * @param statesDiscovered DFA states discovered when the construction stopped
+     * @param subsetsExplored  DFA states whose transitions had been computed
+     * @param estimatedBytes   estimated memory use when the construction stopped
+     * @param elapsedNanos     time the construction ran
+     */
+    BudgetExceededException(Limit limit, int statesDiscovered, int subsetsExplored,
+                            long estimatedBytes, long elapsedNanos) {
+        super("determinization budget exceeded (" + limit + ") after " + statesDiscovered + " states, "
+                + subsetsExplored + " explored, about " + estimatedBytes / 1024 + " KB in "
+                + elapsedNanos / 1_000_000 + " ms");
+        this.limit = limit;
+        this.statesDiscovered = statesDiscovered;
+        this.subsetsExplored = subsetsExplored;
+        this.estimatedBytes = estimatedBytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public Limit getLimit() {
+        return limit;
+    }
+
+    public int getStatesDiscovered() {
+        return statesDiscovered;
+    }
+
+    public int getSubsetsExplored() {
+        return subsetsExplored;
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
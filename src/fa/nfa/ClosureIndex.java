@@ -0,0 +1,155 @@
+package fa.nfa;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Precomputed eClosure of every state of an NFA. The graph of empty
+ * transitions is condensed into its strongly connected components, every
+ * component gets one closure bit set that is shared by all of its states, and
+ * components are visited in reverse topological order so each closure is the
+ * union of the closures of its successors.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+final class ClosureIndex {
+    //states indexed by their id
+    private final NFAState[] states;
+    //closure[id] is the eClosure of the state with that id, shared within a component
+    private final BitSet[] closure;
+
+    /**
+     * @param all the states of the NFA, each carrying its dense id
+     */
+    ClosureIndex(Collection<NFAState> all) {
+        int n = all.size();
+        states = new NFAState[n];
+        //successors of every state on the empty symbol
+        int[][] succ = new int[n][];
+        for (NFAState s : all) {
+            Set<NFAState> to = s.getTransitions("e");
+            int[] ids = new int[to == null ? 0 : to.size()];
+            int i = 0;
+            if (to != null) {
+                for (NFAState t : to) {
+                    ids[i++] = t.getId();
+                }
+            }
+            succ[s.getId()] = ids;
+            states[s.getId()] = s;
+        }
+        closure = new BitSet[n];
+        condense(succ);
+    }
+
+    /**
+     * @param id a state id
+     * @return the state with the id
+     */
+    NFAState state(int id) {
+        return states[id];
+    }
+
+    /**
+     * @param id a state id
+     * @return the eClosure of the state, must not be modified
+     */
+    BitSet closure(int id) {
+        return closure[id];
+    }
+
+    /**
+     * @param set a set of state ids
+     * @return the union of the eClosures of every state in the set
+     */
+    BitSet closureOf(BitSet set) {
+        //sized by its highest id, the result may become a subset key that lives as long as the DFA
+        BitSet ret = new BitSet();
+        for (int id = set.nextSetBit(0); id >= 0; id = set.nextSetBit(id + 1)) {
+            ret.or(closure[id]);
+        }
+        return ret;
+    }
+
+    /**
+     * Iterative version of Tarjan's algorithm. Components are completed in
+     * reverse topological order, so when a component is popped every component
+     * it can reach already has its closure.
+     *
+     * @param succ successors of every state on the empty symbol
+     */
+    private void condense(int[][] succ) {
+        int n = succ.length;
+        int[] index = new int[n];
+        int[] low = new int[n];
+        boolean[] onStack = new boolean[n];
+        //stack of states of components that are not complete yet
+        int[] stack = new int[n];
+        int top = 0;
+        //depth first search stack of states and the next successor to visit
+        int[] dfs = new int[n];
+        int[] next = new int[n];
+        int counter = 1;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] != 0) {
+                continue;
+            }
+            int depth = 0;
+            dfs[depth] = root;
+            next[depth] = 0;
+            index[root] = low[root] = counter++;
+            stack[top++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int v = dfs[depth];
+                if (next[depth] < succ[v].length) {
+                    int w = succ[v][next[depth]++];
+                    if (index[w] == 0) {
+                        //descend into an unvisited successor
+                        index[w] = low[w] = counter++;
+                        stack[top++] = w;
+                        onStack[w] = true;
+                        depth++;
+                        dfs[depth] = w;
+                        next[depth] = 0;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                //all successors are done, pop the component if v is its root
+                if (low[v] == index[v]) {
+                    //most components are a single state without empty transitions, keep those small
+                    BitSet set = new BitSet();
+                    int first = top;
+                    do {
+                        first--;
+                        set.set(stack[first]);
+                    } while (stack[first] != v);
+                    //union the closures of the components the members lead to
+                    for (int i = first; i < top; i++) {
+                        for (int w : succ[stack[i]]) {
+                            if (closure[w] != null) {
+                                set.or(closure[w]);
+                            }
+                        }
+                    }
+                    for (int i = first; i < top; i++) {
+                        closure[stack[i]] = set;
+                        onStack[stack[i]] = false;
+                    }
+                    top = first;
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = dfs[depth];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package fa.nfa;
+
+/**
+ * Limits on the work a subset construction may do. The construction stops
+ * with a BudgetExceededException as soon as it discovers more DFA states than
+ * allowed, its estimated memory use passes the limit or it runs past the
+ * deadline, so an NFA whose DFA explodes cannot take the whole heap.
+ * <p>
+ * The memory estimate counts the subsets by the words they have allocated,
+ * their transition rows, the memo of closed target sets and the transitions
+ * of the DFA states they turn into. It is meant to be within a small factor
+ * of the real footprint, not exact.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public final class DeterminizationBudget {
+    /**
+     * A budget that never runs out, the one getDFA uses
+     */
+    public static final DeterminizationBudget UNLIMITED =
+            new DeterminizationBudget(Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final int maxStates;
+    private final long maxBytes;
+    private final long maxMillis;
+
+    /**
+     * @param maxStates most DFA states the construction may discover
+     * @param maxBytes  most bytes the construction may be estimated to use
+     * @param maxMillis most milliseconds the construction may run, Long.MAX_VALUE for no deadline
+     */
+    public DeterminizationBudget(int maxStates, long maxBytes, long maxMillis) {
+        if (maxStates < 1 || maxBytes < 1 || maxMillis < 1) {
+            throw new IllegalArgumentException("budget limits must be positive");
+        }
+        this.maxStates = maxStates;
+        this.maxBytes = maxBytes;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * @param maxStates most DFA states the construction may discover
+     * @return a budget that only limits the number of states
+     */
+    public static DeterminizationBudget ofStates(int maxStates) {
+        return new DeterminizationBudget(maxStates, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    public int getMaxStates() {
+        return maxStates;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * @param start the System.nanoTime the construction started at
+     * @return the System.nanoTime of the deadline, Long.MAX_VALUE if there is none
+     */
+    long deadline(long start) {
+        long nanos = maxMillis > Long.MAX_VALUE / 1_000_000 ? Long.MAX_VALUE : maxMillis * 1_000_000;
+        return nanos > Long.MAX_VALUE - start ? Long.MAX_VALUE : start + nanos;
+    }
+}
@@ -0,0 +1,291 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Builds the position (Glushkov) automaton of a regular expression. Every
+ * occurrence of a symbol or character class in the pattern becomes one state
+ * and a state is entered on the symbols of its occurrence only, so the NFA has
+ * no empty transitions and eClosure never has to search for these inputs.
+ * <p>
+ * The syntax is the usual one: concatenation, | for alternation, the
+ * postfix operators *, + and ?, parentheses for grouping, classes such as
+ * [a-dx] and a backslash to take the next character literally. An empty
+ * pattern or group matches the empty string. The character 'e' is the empty
+ * symbol of this package and cannot be matched, so a literal e is rejected,
+ * while a class range that spans it simply leaves it out.
+ * <p>
+ * The start state is named q0 and the state of the i-th occurrence qi.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public final class Glushkov {
+    private final String pattern;
+    private int pos;
+    //symbols.get(i - 1) are the symbols of occurrence i
+    private final List<char[]> symbols = new ArrayList<>();
+    //follow.get(i - 1) are the occurrences that can come right after occurrence i
+    private final List<BitSet> follow = new ArrayList<>();
+
+    /**
+     * What the automaton of a part of the pattern looks like from outside
+     */
+    private static final class Part {
+        private final boolean nullable;
+        //occurrences a match of the part can start and end with
+        private final BitSet first;
+        private final BitSet last;
+
+        private Part(boolean nullable, BitSet first, BitSet last) {
+            this.nullable = nullable;
+            this.first = first;
+            this.last = last;
+        }
+    }
+
+    private Glushkov(String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * @param pattern a regular expression, see the class comment
+     * @return an NFA without empty transitions that accepts the strings the pattern matches
+     * @throws IllegalArgumentException if the pattern is malformed or matches a literal 'e'
+     */
+    public static NFA compile(String pattern) {
+        Glushkov g = new Glushkov(pattern);
+        Part whole = g.alternation();
+        if (g.pos < pattern.length()) {
+            throw g.error("unexpected " + pattern.charAt(g.pos), g.pos);
+        }
+        return g.toNFA(whole);
+    }
+
+    /**
+     * @param whole the part for the whole pattern
+     * @return the position automaton
+     */
+    private NFA toNFA(Part whole) {
+        int n = symbols.size();
+        NFA nfa = new NFA(n + 1);
+        if (whole.nullable) {
+            nfa.addFinalState("q0");
+        }
+        nfa.addStartState("q0");
+        for (int i = 1; i <= n; i++) {
+            if (whole.last.get(i)) {
+                nfa.addFinalState("q" + i);
+            } else {
+                nfa.addState("q" + i);
+            }
+        }
+        addTransitions(nfa, "q0", whole.first);
+        for (int i = 1; i <= n; i++) {
+            addTransitions(nfa, "q" + i, follow.get(i - 1));
+        }
+        return nfa;
+    }
+
+    /**
+     * @param nfa   the automaton being built
+     * @param from  the state the transitions leave
+     * @param to    the occurrences the transitions enter
+     */
+    private void addTransitions(NFA nfa, String from, BitSet to) {
+        for (int i = to.nextSetBit(0); i >= 0; i = to.nextSetBit(i + 1)) {
+            char[] chars = symbols.get(i - 1);
+            //runs of consecutive symbols go in as one range
+            for (int k = 0, run; k < chars.length; k = run) {
+                run = k + 1;
+                while (run < chars.length && chars[run] == chars[run - 1] + 1) {
+                    run++;
+                }
+                nfa.addTransitions(from, chars[k], chars[run - 1], "q" + i);
+            }
+        }
+    }
+
+    /**
+     * alternation := concatenation ('|' concatenation)*
+     */
+    private Part alternation() {
+        Part ret = concatenation();
+        while (peek('|')) {
+            pos++;
+            Part next = concatenation();
+            BitSet first = (BitSet) ret.first.clone();
+            first.or(next.first);
+            BitSet last = (BitSet) ret.last.clone();
+            last.or(next.last);
+            ret = new Part(ret.nullable || next.nullable, first, last);
+        }
+        return ret;
+    }
+
+    /**
+     * concatenation := repetition*, empty matches the empty string
+     */
+    private Part concatenation() {
+        Part ret = new Part(true, new BitSet(), new BitSet());
+        while (pos < pattern.length() && !peek('|') && !peek(')')) {
+            Part next = repetition();
+            //every occurrence that can end the left part can be followed by one that starts the right
+            link(ret.last, next.first);
+            BitSet first = (BitSet) ret.first.clone();
+            if (ret.nullable) {
+                first.or(next.first);
+            }
+            BitSet last = (BitSet) next.last.clone();
+            if (next.nullable) {
+                last.or(ret.last);
+            }
+            ret = new Part(ret.nullable && next.nullable, first, last);
+        }
+        return ret;
+    }
+
+    /**
+     * repetition := atom ('*' | '+' | '?')*
+     */
+    private Part repetition() {
+        Part ret = atom();
+        while (peek('*') || peek('+') || peek('?')) {
+            char op = pattern.charAt(pos++);
+            if (op != '?') {
+                //a repeated part can start over after any of its ends
+                link(ret.last, ret.first);
+            }
+            ret = new Part(ret.nullable || op != '+', ret.first, ret.last);
+        }
+        return ret;
+    }
+
+    /**
+     * atom := '(' alternation ')' | '[' class ']' | '\' char | char
+     */
+    private Part atom() {
+        char c = pattern.charAt(pos++);
+        switch (c) {
+            case '(':
+                Part group = alternation();
+                if (!peek(')')) {
+                    throw error("missing )", pos);
+                }
+                pos++;
+                return group;
+            case '[':
+                return occurrence(characterClass());
+            case '\\':
+                if (pos == pattern.length()) {
+                    throw error("nothing to escape", pos - 1);
+                }
+                return occurrence(new char[]{literal(pattern.charAt(pos++))});
+            case '*':
+            case '+':
+            case '?':
+            case ')':
+            case ']':
+                throw error("unexpected " + c, pos - 1);
+            default:
+                return occurrence(new char[]{literal(c)});
+        }
+    }
+
+    /**
+     * class := (char | char '-' char)+ ']', negated classes are not supported
+     *
+     * @return the symbols of the class, 'e' left out
+     */
+    private char[] characterClass() {
+        StringBuilder chars = new StringBuilder();
+        //members already in chars, which keeps them in the order they were written
+        BitSet seen = new BitSet();
+        while (!peek(']')) {
+            if (pos == pattern.length()) {
+                throw error("missing ]", pos);
+            }
+            char lo = classChar();
+            char hi = lo;
+            if (peek('-') && pos + 1 < pattern.length() && pattern.charAt(pos + 1) != ']') {
+                pos++;
+                hi = classChar();
+                if (hi < lo) {
+                    throw error("empty range " + lo + "-" + hi, pos - 1);
+                }
+            } else if (lo == 'e') {
+                literal(lo);
+            }
+            for (int x = lo; x <= hi; x++) {
+                if (x != 'e' && !seen.get(x)) {
+                    seen.set(x);
+                    chars.append((char) x);
+                }
+            }
+        }
+        pos++;
+        if (chars.length() == 0) {
+            throw error("empty class", pos - 1);
+        }
+        return chars.toString().toCharArray();
+    }
+
+    private char classChar() {
+        char c = pattern.charAt(pos++);
+        if (c == '\\') {
+            if (pos == pattern.length()) {
+                throw error("nothing to escape", pos - 1);
+            }
+            c = pattern.charAt(pos++);
+        }
+        return c;
+    }
+
+    /**
+     * @param chars the symbols of a new occurrence
+     * @return the part made of that occurrence alone
+     */
+    private Part occurrence(char[] chars) {
+        symbols.add(chars);
+        follow.add(new BitSet());
+        BitSet only = new BitSet();
+        only.set(symbols.size());
+        return new Part(false, only, only);
+    }
+
+    /**
+     * @param from occurrences
+     * @param to   occurrences that may follow every one of them
+     */
+    private void link(BitSet from, BitSet to) {
+        for (int i = from.nextSetBit(0); i >= 0; i = from.nextSetBit(i + 1)) {
+            follow.get(i - 1).or(to);
+        }
+    }
+
+    /**
+     * @param c a character to match literally
+     * @return c
+     */
+    private char literal(char c) {
+        if (c == 'e') {
+            throw error("'e' is the empty symbol and cannot be matched", pos - 1);
+        }
+        return c;
+    }
+
+    private boolean peek(char c) {
+        return pos < pattern.length() && pattern.charAt(pos) == c;
+    }
+
+    /**
+     * @param message what is wrong
+     * @param at      index of the pattern where it was found
+     * @return the exception to throw
+     */
+    private IllegalArgumentException error(String message, int at) {
+        return new IllegalArgumentException(message + " at index " + at + " of " + pattern);
+    }
+}
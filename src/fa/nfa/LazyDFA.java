@@ -0,0 +1,149 @@
+package fa.nfa;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * DFA that is built while it is being run. A DFA state is only made from its
+ * subset of NFA states when the input first reaches it, and each transition
+ * is only computed the first time it is taken. The states live in a cache of
+ * bounded size that is emptied when it fills up; if one input empties it too
+ * often the rest of that input is matched by simulating the NFA directly.
+ * Instances are not thread safe.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public class LazyDFA {
+    //default number of DFA states kept in the cache
+    public static final int DEFAULT_CAPACITY = 10000;
+    //number of times one input may empty the cache before falling back to simulation
+    private static final int MAX_FLUSHES = 3;
+
+    private final TransitionTable table;
+    private final int capacity;
+    //the DFA states built so far, by subset
+    private final Map<BitSet, LazyState> cache;
+    private LazyState start;
+    private int flushes;
+    //used when the cache thrashes, built on first use
+    private NFASimulator simulator;
+
+    /**
+     * A DFA state built from a subset of NFA states
+     */
+    private static final class LazyState {
+        private final BitSet set;
+        private final boolean isFinal;
+        //next[cls] is the state on the symbol class, null until the transition is first taken
+        private final LazyState[] next;
+
+        private LazyState(BitSet set, boolean isFinal, int classes) {
+            this.set = set;
+            this.isFinal = isFinal;
+            this.next = new LazyState[classes];
+        }
+    }
+
+    /**
+     * @param nfa the NFA to run, later changes to it are not seen
+     */
+    public LazyDFA(NFA nfa) {
+        this(nfa, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param nfa      the NFA to run, later changes to it are not seen
+     * @param capacity the most DFA states kept at once, at least 3 so the start state
+     *                 and the two ends of a transition fit after the cache is emptied
+     */
+    public LazyDFA(NFA nfa, int capacity) {
+        if (capacity < 3) {
+            throw new IllegalArgumentException("capacity must be at least 3 but was " + capacity);
+        }
+        this.table = nfa.transitionTable();
+        this.capacity = capacity;
+        this.cache = new HashMap<>();
+    }
+
+    /**
+     * Simulates the DFA on input s. Like DFA.accepts the single
+     * character string "e" stands for the empty string.
+     *
+     * @param s the input string
+     * @return true if s is in the language of the NFA
+     */
+    public boolean accepts(String s) {
+        int len = s.length() == 1 && s.charAt(0) == 'e' ? 0 : s.length();
+        if (start == null) {
+            start = intern(table.closures.closure(table.start));
+        }
+        int flushed = 0;
+        LazyState curr = start;
+        for (int i = 0; i < len; i++) {
+            int cls = table.classIndex(s.charAt(i));
+            if (cls < 0) {
+                return false;
+            }
+            LazyState to = curr.next[cls];
+            if (to == null) {
+                if (cache.size() >= capacity) {
+                    //the cache thrashes on this input, simulate the NFA for the rest of it
+                    if (++flushed > MAX_FLUSHES) {
+                        if (simulator == null) {
+                            simulator = new NFASimulator(table);
+                        }
+                        return simulator.run(curr.set, s, i, len);
+                    }
+                    flush();
+                    curr = intern(curr.set);
+                }
+                to = intern(table.closures.closureOf(table.targets(curr.set, cls)));
+                curr.next[cls] = to;
+            }
+            curr = to;
+            //nothing can be accepted from the empty set
+            if (curr.set.isEmpty()) {
+                return false;
+            }
+        }
+        return curr.isFinal;
+    }
+
+    /**
+     * @return number of DFA states in the cache
+     */
+    public int getCachedStates() {
+        return cache.size();
+    }
+
+    /**
+     * @return number of times the cache was emptied because it was full
+     */
+    public int getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * @param set a subset of NFA state ids
+     * @return the cached DFA state of the subset, creating it if needed
+     */
+    private LazyState intern(BitSet set) {
+        LazyState state = cache.get(set);
+        if (state == null) {
+            state = new LazyState(set, set.intersects(table.finals), table.classes);
+            cache.put(set, state);
+        }
+        return state;
+    }
+
+    /**
+     * Drops every cached DFA state
+     */
+    private void flush() {
+        cache.clear();
+        flushes++;
+        start = intern(table.closures.closure(table.start));
+    }
+}
@@ -0,0 +1,161 @@
+package fa.nfa;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Matches a string against many NFAs in one pass. The NFAs are joined under
+ * a new start state with an empty transition to each of their start states
+ * and the result is determinized once. Every DFA state is tagged with the
+ * numbers of the NFAs that have a final state in its subset, so the state a
+ * string ends in tells which of the NFAs accept it.
+ * <p>
+ * The transitions are kept in a flat int array like CompiledDFA and equal
+ * tags share one array. Instances never change after construction and may be
+ * shared between threads.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+public final class MultiMatcher {
+    private static final int[] NONE = new int[0];
+
+    private final TransitionTable table;
+    private final int patterns;
+    //delta[row + cls] is the row of the next state, rows are premultiplied by classes
+    private final int[] delta;
+    //tags[state] are the numbers of the NFAs accepting in the state, in increasing order
+    private final int[][] tags;
+    private final int classes;
+
+    /**
+     * @param nfas the NFAs to match, numbered by their position in the list,
+     *             later changes to them are not seen
+     */
+    public MultiMatcher(List<NFA> nfas) {
+        this(nfas, DeterminizationBudget.UNLIMITED);
+    }
+
+    /**
+     * @param nfas   the NFAs to match, numbered by their position in the list
+     * @param budget limits on the determinization of the joined NFA
+     * @throws BudgetExceededException if the determinization went over the budget
+     */
+    public MultiMatcher(List<NFA> nfas, DeterminizationBudget budget) {
+        patterns = nfas.size();
+        int total = 1;
+        for (NFA nfa : nfas) {
+            total += nfa.getStates().size();
+        }
+        //owner[id] is the number of the NFA whose final state has the joined id, -1 for other states
+        int[] owner = new int[total];
+        Arrays.fill(owner, -1);
+        NFA joined = new NFA(total);
+        joined.addStartState("start");
+        for (int i = 0; i < patterns; i++) {
+            NFA nfa = nfas.get(i);
+            //prefixing the names with the number of the NFA keeps them apart
+            String prefix = i + ":";
+            int first = joined.getStates().size();
+            for (NFAState s : nfa.states()) {
+                joined.addState(prefix + s.getName());
+                if (nfa.getFinalStates().contains(s)) {
+                    owner[first + s.getId()] = i;
+                }
+            }
+            for (NFAState s : nfa.states()) {
+                for (Map.Entry<String, Set<NFAState>> e : s.symbolTransitions().entrySet()) {
+                    for (NFAState to : e.getValue()) {
+                        joined.addTransition(prefix + s.getName(), e.getKey().charAt(0), prefix + to.getName());
+                    }
+                }
+                for (NFAState.Range r : s.ranges()) {
+                    joined.addTransitions(prefix + s.getName(), r.first, r.last, prefix + r.to.getName());
+                }
+            }
+            if (nfa.getStartState() != null) {
+                joined.addTransition("start", 'e', prefix + nfa.getStartState().getName());
+            }
+        }
+
+        table = joined.transitionTable();
+        SubsetConstruction construction = new SubsetConstruction(table, budget);
+        construction.explore();
+        List<BitSet> subsets = construction.subsets();
+        List<int[]> moves = construction.moves();
+        classes = Math.max(1, table.classes);
+        delta = new int[subsets.size() * classes];
+        tags = new int[subsets.size()][];
+        Map<BitSet, int[]> shared = new HashMap<>();
+        for (int q = 0; q < subsets.size(); q++) {
+            int[] row = moves.get(q);
+            for (int cls = 0; cls < row.length; cls++) {
+                delta[q * classes + cls] = row[cls] * classes;
+            }
+            BitSet accepting = new BitSet(patterns);
+            BitSet set = subsets.get(q);
+            for (int id = set.nextSetBit(0); id >= 0; id = set.nextSetBit(id + 1)) {
+                if (owner[id] >= 0) {
+                    accepting.set(owner[id]);
+                }
+            }
+            tags[q] = shared.computeIfAbsent(accepting, b -> b.isEmpty() ? NONE : b.stream().toArray());
+        }
+    }
+
+    /**
+     * @param input the input string, the single character string "e" stands for the empty string
+     * @return the numbers of the NFAs that accept the input, in increasing order
+     */
+    public int[] matches(CharSequence input) {
+        return tagsOf(input).clone();
+    }
+
+    /**
+     * @param input   the input string, the single character string "e" stands for the empty string
+     * @param pattern the number of an NFA
+     * @return true if that NFA accepts the input
+     */
+    public boolean matches(CharSequence input, int pattern) {
+        return Arrays.binarySearch(tagsOf(input), pattern) >= 0;
+    }
+
+    /**
+     * @return the number of NFAs matched
+     */
+    public int getPatternCount() {
+        return patterns;
+    }
+
+    /**
+     * @return the number of states of the joined DFA
+     */
+    public int getStateCount() {
+        return tags.length;
+    }
+
+    /**
+     * @param input the input string
+     * @return the tags of the state the input ends in, not to be modified
+     */
+    private int[] tagsOf(CharSequence input) {
+        int len = input.length();
+        if (len == 1 && input.charAt(0) == 'e') {
+            len = 0;
+        }
+        int row = 0;
+        for (int i = 0; i < len; i++) {
+            int cls = table.classIndex(input.charAt(i));
+            if (cls < 0) {
+                //no NFA has a transition on the character
+                return NONE;
+            }
+            row = delta[row + cls];
+        }
+        return tags[row / classes];
+    }
+}
@@ -1,10 +1,11 @@
 package fa.nfa;
 
+import fa.FAListener;
 import fa.State;
 import fa.dfa.DFA;
-import fa.dfa.DFAState;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author JustinRaver, NickStolarow
@@ -14,48 +15,102 @@ public class NFA implements NFAInterface {
 
     //instance variables
     private final Set<NFAState> states;
-    private final Set<Character> alphabet;
+    //the alphabet as ranges {first, last} in the order they were added, a symbol being a range of one
+    private final List<char[]> alphabet;
+    //the symbols of the alphabet, so a symbol can be looked up without going through the ranges
+    private final BitSet symbols;
+    //the alphabet as getABC returns it, built on demand and dropped when a symbol is added
+    private Set<Character> abc;
     private NFAState startState;
     private final Set<NFAState> finalStates;
+    //states by name, the first state added under a name wins
+    private final Map<String, NFAState> byName;
+    //eClosure of every state, built on demand and dropped when states or empty transitions are added
+    private ClosureIndex closureIndex;
+    //simulator for accepts, built on demand and dropped on any change
+    private NFASimulator simulator;
+    //subset construction kept by getIncrementalDFA, dropped on changes it cannot follow
+    private SubsetConstruction incremental;
+    //ids of the states that gained symbol transitions since the last getIncrementalDFA
+    private final BitSet changed = new BitSet();
+    //receives metrics of constructions and matches, null if nobody listens
+    private FAListener listener;
 
     /**
      * Basic Constructor
      */
     public NFA() {
-        this.states = new LinkedHashSet<>();
-        this.alphabet = new LinkedHashSet<>();
+        this(16);
+    }
+
+    /**
+     * Constructor for large automata that sizes the state tables up front
+     *
+     * @param expectedStates the number of states the NFA is expected to hold
+     */
+    public NFA(int expectedStates) {
+        int capacity = Math.max(16, (int) (expectedStates / 0.75f) + 1);
+        this.states = new LinkedHashSet<>(capacity);
+        this.alphabet = new ArrayList<>();
+        this.symbols = new BitSet();
         this.finalStates = new LinkedHashSet<>();
+        this.byName = new HashMap<>(capacity);
     }
 
     @Override
     public void addStartState(String name) {
+        simulator = null;
+        NFAState prev = startState;
         //check if a state with name already exists
         if (getState(name) == null) {
             //if not create new state and set it as start state
-            NFAState state = new NFAState(name);
+            NFAState state = newState(name);
             this.startState = state;
-            //add it to our list of states
-            states.add(state);
         } else {
             //if it does then get the already created state and set it as the start state
             this.startState = getState(name);
         }
+        //every subset grows out of the start state
+        if (startState != prev) {
+            incremental = null;
+        }
     }
 
     @Override
     public void addState(String name) {
-        states.add(new NFAState(name));
+        newState(name);
+    }
+
+    /**
+     * Adds several non-final, not initial states at once
+     *
+     * @param names the labels of the states
+     */
+    public void addStates(Collection<String> names) {
+        for (String name : names) {
+            newState(name);
+        }
+    }
+
+    /**
+     * Adds several final states at once
+     *
+     * @param names the labels of the states
+     */
+    public void addFinalStates(Collection<String> names) {
+        for (String name : names) {
+            addFinalState(name);
+        }
     }
 
     @Override
     public void addFinalState(String name) {
+        simulator = null;
         //check if a state with name already exists
         if (getState(name) == null) {
             //if not create new state and set it as final state
-            NFAState state = new NFAState(name);
+            NFAState state = newState(name);
             finalStates.add(state);
-            //add it to our list of states
-            states.add(state);
         } else {
             //if it does then get the already created state and set it as the final state
             finalStates.add(getState(name));
@@ -65,11 +120,83 @@ public class NFA implements NFAInterface {
     @Override
     public void addTransition(String fromState, char onSym, String toState) {
         //add transition symbol to the alphabet
-        alphabet.add(onSym);
+        addSymbols(onSym, onSym);
+        simulator = null;
+        //a new empty transition changes the eClosures
+        if (onSym == 'e') {
+            closureIndex = null;
+            incremental = null;
+        } else if (getState(fromState) != null) {
+            changed.set(getState(fromState).getId());
+        }
         //add transition
         Objects.requireNonNull(getState(fromState)).setTransitions(String.valueOf(onSym), getState(toState));
     }
 
+    /**
+     * Adds a transition on every character from first to last. The range never
+     * makes an empty transition, 'e' is skipped if it falls inside it. The
+     * range is kept as one interval rather than a transition per character,
+     * and the transition tables cut the alphabet only where ranges start or
+     * end, so the work of accepts and of the subset construction grows with
+     * the number of ranges, not with their width. The DFA built still has
+     * every character in its alphabet, and the DFA methods that go through
+     * the alphabet symbol by symbol, such as toString, compile and minimize,
+     * take time in proportion to it.
+     *
+     * @param fromState name of the state the transitions leave
+     * @param first     first character of the range
+     * @param last      last character of the range, inclusive
+     * @param toState   name of the state the transitions enter
+     */
+    public void addTransitions(String fromState, char first, char last, String toState) {
+        if (first > last) {
+            throw new IllegalArgumentException("empty symbol range " + first + "-" + last);
+        }
+        if (first == last) {
+            if (first != 'e') {
+                addTransition(fromState, first, toState);
+            }
+            return;
+        }
+        NFAState from = Objects.requireNonNull(getState(fromState));
+        NFAState to = getState(toState);
+        simulator = null;
+        changed.set(from.getId());
+        //split the range around the empty symbol
+        if (first < 'e') {
+            addRange(from, first, (char) Math.min(last, 'e' - 1), to);
+        }
+        if (last > 'e') {
+            addRange(from, (char) Math.max(first, 'e' + 1), last, to);
+        }
+    }
+
+    /**
+     * @param from  the state the transitions leave
+     * @param first first character of the range, not 'e'
+     * @param last  last character of the range, the range does not hold 'e'
+     * @param to    the state the transitions enter
+     */
+    private void addRange(NFAState from, char first, char last, NFAState to) {
+        addSymbols(first, last);
+        from.addRange(first, last, to);
+    }
+
+    /**
+     * Adds the characters from first to last to the alphabet, after the symbols already in it
+     *
+     * @param first first character
+     * @param last  last character, inclusive
+     */
+    private void addSymbols(char first, char last) {
+        if (symbols.nextClearBit(first) <= last) {
+            alphabet.add(new char[]{first, last});
+            symbols.set(first, last + 1);
+            abc = null;
+        }
+    }
+
     @Override
     public Set<? extends State> getStates() {
         return states;
@@ -85,73 +212,202 @@ public class NFA implements NFAInterface {
         return startState;
     }
 
+    /**
+     * @return the alphabet in the order the symbols were added, built from the ranges when asked for
+     */
     @Override
     public Set<Character> getABC() {
-        return alphabet;
+        if (abc == null) {
+            Set<Character> ret = new LinkedHashSet<>();
+            for (char[] range : alphabet) {
+                for (int c = range[0]; c <= range[1]; c++) {
+                    ret.add((char) c);
+                }
+            }
+            abc = Collections.unmodifiableSet(ret);
+        }
+        return abc;
     }
 
     @Override
     public DFA getDFA() {
-        //keep track of visited States
-        Set<String> visited = new LinkedHashSet<>();
-        //Keep track of the DFA states that have been created
-        Set<String> statesCreated = new LinkedHashSet<>();
-        //DFA to build
-        DFA dfa = new DFA();
-
-        //create queue for breadth first search
-        Queue<Set<NFAState>> q = new LinkedList<>();
-        //queue start state
-        q.add(eClosure(startState));
-
-        while (!q.isEmpty()) {
-            //get the first set from the q and add it to visited
-            Set<NFAState> currSet = q.remove();
-            String newDfaState = getSetName(currSet);
-            visited.add(newDfaState);
-
-            //check if a dfa state has already been created for this set
-            if (!statesCreated.contains(newDfaState)) {
-                //if not create one and add it to statesCreated
-                createDFAState(currSet, dfa);
-                statesCreated.add(newDfaState);
-            }
+        //index the states and run the subset construction on the ids
+        return getDFA(DeterminizationBudget.UNLIMITED);
+    }
 
-            //go thru the alphabet and get transitions for each sym except 'e' adding unique transitions to queue
-            for (Character c : alphabet) {
-                //check for the empty transition in the alphabet
-                if (c == 'e') {
-                    continue;
-                }
-                //set to contain the combined transitions for new state
-                Set<NFAState> transOnC = combineSets(String.valueOf(c), currSet);
-                //Get the name of the combined set
-                String toState = getSetName(transOnC);
-
-                //if the set is empty
-                if (toState.isEmpty()) {
-                    //add this empty transition to the dfa state
-                    String emptyState = createDFAState(transOnC, dfa).toString();
-                    dfa.addTransition(newDfaState, c, emptyState);
-                } else {
-                    //if the state isn't already created then create one and add to statesCreated
-                    if (!statesCreated.contains(toState)) {
-                        createDFAState(transOnC, dfa);
-                        statesCreated.add(toState);
-                    }
-                    //add the transition to the dfa
-                    dfa.addTransition(newDfaState, c, toState);
-                    //if the new state hasn't been visited and isn't already in the q add it to the q
-                    if (!visited.contains(toState)) {
-                        q.add(transOnC);
+    /**
+     * Same DFA as getDFA, but the subset construction stops as soon as it
+     * goes over the budget. Callers can then fall back to accepts or a
+     * LazyDFA, which never build more states than the strings reach.
+     *
+     * @param budget limits on the states, memory and time of the construction
+     * @return the DFA equivalent to this NFA
+     * @throws BudgetExceededException if the construction went over the budget
+     */
+    public DFA getDFA(DeterminizationBudget budget) {
+        long t = System.nanoTime();
+        SubsetConstruction construction = new SubsetConstruction(transitionTable(), budget);
+        long tableNanos = System.nanoTime() - t;
+        return report(construction, false, tableNanos, construction.build());
+    }
+
+    /**
+     * Same DFA as getDFA, built by the workers of the pool. Each level of the
+     * breadth first search over the subsets is expanded in parallel and the
+     * new subsets are numbered in the order the serial search finds them, so
+     * the DFA is identical to the one getDFA returns.
+     *
+     * @param pool the pool to build the DFA on
+     * @return the DFA equivalent to this NFA
+     */
+    public DFA getDFA(ForkJoinPool pool) {
+        return getDFA(DeterminizationBudget.UNLIMITED, pool);
+    }
+
+    /**
+     * Parallel getDFA that stops as soon as the construction goes over the budget
+     *
+     * @param budget limits on the states, memory and time of the construction
+     * @param pool   the pool to build the DFA on
+     * @return the DFA equivalent to this NFA
+     * @throws BudgetExceededException if the construction went over the budget
+     */
+    public DFA getDFA(DeterminizationBudget budget, ForkJoinPool pool) {
+        long t = System.nanoTime();
+        SubsetConstruction construction = new SubsetConstruction(transitionTable(), budget);
+        long tableNanos = System.nanoTime() - t;
+        return report(construction, false, tableNanos, construction.build(pool));
+    }
+
+    /**
+     * Same DFA as getDFA, but the subset construction is kept between calls.
+     * After symbol transitions, states or final states were added only the
+     * DFA states holding a state that gained transitions are explored again,
+     * along with the new DFA states they reach, and DFA states that can no
+     * longer be reached are dropped. A new empty transition or start state
+     * changes every eClosure, so the next call runs a full construction.
+     *
+     * @return the DFA equivalent to this NFA
+     */
+    public DFA getIncrementalDFA() {
+        long t = System.nanoTime();
+        TransitionTable table = transitionTable();
+        long tableNanos = System.nanoTime() - t;
+        DFA dfa;
+        boolean update = incremental != null;
+        if (update) {
+            dfa = incremental.update(table, changed);
+        } else {
+            incremental = new SubsetConstruction(table);
+            dfa = incremental.build();
+        }
+        changed.clear();
+        return report(incremental, update, tableNanos, dfa);
+    }
+
+    /**
+     * Builds an equivalent NFA without empty transitions. Every state gets
+     * the symbol transitions of all the states in its eClosure and is final
+     * if its eClosure holds a final state, after which the states that can no
+     * longer be reached from the start state are left out. Each eClosure is
+     * computed once here, instead of once per subset and symbol in getDFA.
+     *
+     * @return a new NFA with the same state names, this one is not modified
+     */
+    public NFA removeEpsilons() {
+        if (startState == null) {
+            return new NFA();
+        }
+        TransitionTable table = transitionTable();
+        int n = table.states.length;
+        //lifted[id][cls] are the targets of the eClosure of the state, computed for reachable states only
+        BitSet[][] lifted = new BitSet[n][];
+        BitSet reached = new BitSet(n);
+        int[] stack = new int[n];
+        int size = 0;
+        stack[size++] = table.start;
+        reached.set(table.start);
+        while (size > 0) {
+            int id = stack[--size];
+            BitSet closure = table.closures.closure(id);
+            lifted[id] = new BitSet[table.classes];
+            for (int cls = 0; cls < table.classes; cls++) {
+                BitSet to = table.targets(closure, cls);
+                lifted[id][cls] = to;
+                for (int t = to.nextSetBit(0); t >= 0; t = to.nextSetBit(t + 1)) {
+                    if (!reached.get(t)) {
+                        reached.set(t);
+                        stack[size++] = t;
                     }
                 }
+            }
+        }
 
+        NFA ret = new NFA(reached.cardinality());
+        //keep the whole alphabet even if a symbol was only used by states left out
+        for (char[] range : alphabet) {
+            if (range[0] != 'e' || range[1] != 'e') {
+                ret.addSymbols(range[0], range[1]);
+            }
+        }
+        for (int id = reached.nextSetBit(0); id >= 0; id = reached.nextSetBit(id + 1)) {
+            String name = table.states[id].getName();
+            if (table.closures.closure(id).intersects(table.finals)) {
+                ret.addFinalState(name);
+            } else if (id != table.start) {
+                ret.addState(name);
+            }
+            if (id == table.start) {
+                ret.addStartState(name);
+            }
+        }
+        for (int id = reached.nextSetBit(0); id >= 0; id = reached.nextSetBit(id + 1)) {
+            for (int i = 0; i < table.first.length; i++) {
+                BitSet to = lifted[id][table.intervalClass[i]];
+                for (int t = to.nextSetBit(0); t >= 0; t = to.nextSetBit(t + 1)) {
+                    ret.addTransitions(table.states[id].getName(), table.first[i], table.last[i],
+                            table.states[t].getName());
+                }
             }
         }
+        return ret;
+    }
+
+    /**
+     * Attaches a listener that is told about every DFA built from this NFA and
+     * every string matched by accepts. The DFAs built afterwards report their
+     * matches to the same listener.
+     *
+     * @param listener the listener, null to stop reporting
+     */
+    public void setListener(FAListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param construction the construction that built the DFA
+     * @param incremental  true if the construction was an update
+     * @param tableNanos   time it took to build the transition table
+     * @param dfa          the DFA built
+     * @return the DFA
+     */
+    private DFA report(SubsetConstruction construction, boolean incremental, long tableNanos, DFA dfa) {
+        if (listener != null) {
+            listener.constructed(construction.stats(incremental, tableNanos, dfa));
+            dfa.setListener(listener);
+        }
         return dfa;
     }
 
+    @Override
+    public boolean accepts(String s) {
+        //simulate the nfa directly instead of building the dfa
+        if (simulator == null) {
+            simulator = new NFASimulator(transitionTable());
+        }
+        return simulator.accepts(s, listener);
+    }
+
     @Override
     public Set<NFAState> getToState(NFAState from, char onSymb) {
         return from.getTransitions(String.valueOf(onSymb));
@@ -159,34 +415,8 @@ public class NFA implements NFAInterface {
 
     @Override
     public Set<NFAState> eClosure(NFAState s) {
-        //Set to keep the eClosure
-        Set<NFAState> set = new TreeSet<>(Comparator.comparing(State::toString));
-        //set to keep the visited nodes
-        Set<NFAState> visited = new TreeSet<>(Comparator.comparing(State::toString));
-        //Depth first algorithm:
-        set.add(s);
-        // create stack push root node to stack
-        Stack<NFAState> stack = new Stack<>();
-        //Start the search by pushing root node
-        stack.push(s);
-
-        while (!stack.empty()) {
-            // pop node and push all child nodes onto stack
-            // repeat popping the top node and pushing its children
-            //when stack is empty return list of nodes reached on e
-            Set<NFAState> transitions = stack.pop().getTransitions("e");
-            if (transitions != null) {
-                for (NFAState state : transitions) {
-                    if (!visited.contains(state)) {
-                        stack.push(state);
-                        set.add(state);
-                        visited.add(state);
-                    }
-                }
-            }
-        }
-        //Return the eClosure
-        return set;
+        //look the closure up in the index instead of searching the empty transitions again
+        return toStateSet(closureIndex().closure(s.getId()));
     }
 
     /**
@@ -194,30 +424,63 @@ public class NFA implements NFAInterface {
      * @return a state with the name passed or null if it doesnt exist
      */
     private NFAState getState(String s) {
-        //search through the state set and try to find a state with the name passed in
-        //if there is no such state return null
-        for (NFAState st : states) {
-            if (st.toString().equals(s)) {
-                return st;
-            }
-        }
-        return null;
+        //look the name up in the index, null if there is no such state
+        return byName.get(s);
     }
 
     /**
-     * @param state the state to be compared
-     * @return true if state is final false otherwise
+     * Creates a state with the next free id and adds it to the list of states
+     *
+     * @param name name of the state
+     * @return the new state
      */
-    private boolean isFinal(NFAState state) {
-        //search the final list if state is found return true else return false
-        for (NFAState s : finalStates) {
-            if (s.equals(state)) {
-                return true;
-            }
+    private NFAState newState(String name) {
+        NFAState state = new NFAState(name);
+        state.setId(states.size());
+        states.add(state);
+        byName.putIfAbsent(name, state);
+        //the index has no entry for the new id
+        closureIndex = null;
+        simulator = null;
+        return state;
+    }
+
+    /**
+     * @return the states in id order
+     */
+    Set<NFAState> states() {
+        return states;
+    }
+
+    /**
+     * @return the eClosure of every state, building it if states or empty transitions were added
+     */
+    ClosureIndex closureIndex() {
+        if (closureIndex == null) {
+            closureIndex = new ClosureIndex(states);
         }
-        return false;
+        return closureIndex;
+    }
+
+    /**
+     * @return an id based snapshot of the states and transitions added so far
+     */
+    TransitionTable transitionTable() {
+        return new TransitionTable(states, alphabet, startState, finalStates, closureIndex());
     }
 
+    /**
+     * @param set a set of state ids
+     * @return the states ordered by name
+     */
+    private Set<NFAState> toStateSet(BitSet set) {
+        ClosureIndex index = closureIndex();
+        Set<NFAState> ret = new TreeSet<>(Comparator.comparing(State::toString));
+        for (int id = set.nextSetBit(0); id >= 0; id = set.nextSetBit(id + 1)) {
+            ret.add(index.state(id));
+        }
+        return ret;
+    }
 
     /**
      * @param currSet the set of nfa states
@@ -225,97 +488,19 @@ public class NFA implements NFAInterface {
      * @return the set of combined transitions
      */
     public Set<NFAState> combineSets(String sym, Set<NFAState> currSet) {
-        //Set to hold the combination of set transitions on sym
-        Set<NFAState> transOnSym = new TreeSet<>(Comparator.comparing(State::toString));
+        //Set to hold the ids of the combination of set transitions on sym
+        BitSet transOnSym = new BitSet(states.size());
 
         //go through each nfa state and add transitions for sym to transOnSym
         for (NFAState state : currSet) {
             if (state.getTransitions(sym) != null) {
-                transOnSym.addAll(state.getTransitions(sym));
-            }
-        }
-
-        //New set to hold the eClosure of all states in the transOnSym set
-        SortedSet<NFAState> retSet = new TreeSet<>(Comparator.comparing(State::toString));
-        //For each symbol in the set get the empty transitions states too
-        for (NFAState state : transOnSym) {
-            retSet.addAll(eClosure(state));
-        }
-        //Return the final combined set of transitions for sym
-        return retSet;
-    }
-
-    /**
-     * @param set a set of NFA states
-     * @param dfa the dfa being created
-     * @return the name of the new dfa state
-     */
-    private DFAState createDFAState(Set<NFAState> set, DFA dfa) {
-        //Name of the new DFA state
-        String name = getSetName(set);
-
-        //if empty add the empty state name
-        if (set.isEmpty()) {
-            dfa.addState(name);
-        } else {
-            //boolean to see if state is final
-            boolean isFinal = false;
-            //boolean to see if state is start
-            boolean startState = dfa.getStartState() == null;
-
-            //check if any NFAStates are final in the set
-            for (NFAState s : set) {
-                if (isFinal(s)) {
-                    isFinal = true;
-                }
-            }
-
-            //create start state
-            if (startState && set.contains(this.startState)) {
-                //if final create final state first
-                if (isFinal(this.startState)) {
-                    dfa.addFinalState(name);
+                for (NFAState to : state.getTransitions(sym)) {
+                    transOnSym.set(to.getId());
                 }
-                dfa.addStartState(name);
-            } else if (isFinal) {
-                //create final state
-                dfa.addFinalState(name);
-            } else {
-                //create normal state
-                dfa.addState(name);
-            }
-        }
-        //iterate through the DFA state so that I can return the state that has just been created
-        DFAState retState = null;
-        for (DFAState state : dfa.getStates()) {
-            if (state.toString().equals(name)) {
-                retState = state;
-                break;
             }
         }
-        //return the state created
-        return retState;
-    }
 
-    /**
-     * @param set set of NFAStates
-     * @return name of that state
-     */
-    private String getSetName(Set<NFAState> set) {
-        //Iterate through the set and create a name based on the NFAStates withing the set
-        int i = 1;
-        //String builder to build name of the set
-        StringBuilder name = new StringBuilder();
-        //append a left square bracket
-        name.append('[');
-        for (NFAState s : set) {
-            //append a NFA state name
-            name.append(i == set.size() ? s.toString() : s.toString() + ", ");
-            i++;
-        }
-        //append right square bracket
-        name.append(']');
-        //return the name of the set as a string
-        return name.toString();
+        //union the precomputed eClosures of all states in the transOnSym set
+        return toStateSet(closureIndex().closureOf(transOnSym));
     }
 }
@@ -1,9 +1,17 @@
 package fa.nfa;
 
+import fa.dfa.CompiledDFA;
 import fa.dfa.DFA;
+import fa.dfa.LineMatcher;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
 import java.util.Scanner;
 import java.util.StringTokenizer;
 
@@ -18,58 +26,135 @@ import java.util.StringTokenizer;
 public class NFADriver {
 
     /**
-     * @param args - a file name containing a DFA encoding and a set of strings.
-     * @throws FileNotFoundException
+     * @param args - a file name containing a DFA encoding and a set of strings,
+     *             optionally preceded by -lazy to match the strings without
+     *             building and printing the whole DFA, or -stream followed by
+     *             the NFA file and a file of newline separated strings that is
+     *             memory mapped and matched without printing the DFA.
+     * @throws IOException if a file cannot be read
      */
-    public static void main(String[] args) throws FileNotFoundException {
+    public static void main(String[] args) throws IOException {
+        //-lazy builds the DFA states only as the strings reach them
+        boolean lazy = args.length > 1 && args[0].equals("-lazy");
+        //-stream matches the lines of a second, memory mapped file
+        boolean stream = args.length > 2 && args[0].equals("-stream");
         //The file name is passed as an argument
-        String fileName = args[0];
+        String fileName = args[lazy || stream ? 1 : 0];
         File file = new File(fileName);
         if (file.exists()) {
-            //create a DFA instance -- you need to write DFA.java that
-            //implements DFAInterface.java
-            NFA nfa = new NFA();
-            Scanner scan = new Scanner(file);
-            //the first line is the set of final states
-            //get the string of the final states and split it on a space
-            String finalStates = scan.nextLine().trim();
-            //using tokenizer to split the string
-            StringTokenizer tk = new StringTokenizer(finalStates, " ");
-            while (tk.hasMoreTokens()) {
-                nfa.addFinalState(tk.nextToken());
+            Scanner scan = new Scanner(file, "UTF-8");
+            NFA nfa = readNFA(scan);
+            if (stream || lazy) {
+                //only the answers are printed, so the state names may change
+                nfa = nfa.removeEpsilons();
             }
+            if (stream) {
+                File input = new File(args[2]);
+                if (!input.exists()) {
+                    System.err.println(input + " does not exists - please check the file path");
+                } else {
+                    //answers go straight to the standard output channel
+                    LineMatcher matcher = new LineMatcher(nfa.getDFA().compile());
+                    matcher.matchLines(input.toPath(), Channels.newChannel(new FileOutputStream(FileDescriptor.out)));
+                }
+            } else if (lazy) {
+                LazyDFA matcher = new LazyDFA(nfa);
+                while (scan.hasNext()) {
+                    boolean accepts = matcher.accepts(scan.nextLine());
+                    System.out.println(accepts ? "yes" : "no");
+                }
+            } else {
+                DFA dfa = nfa.getDFA();
+                //print out dfa in the specified format, streamed rather than built as one string
+                //through a buffer, as every write to System.out is synchronized and may flush
+                Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+                dfa.write(out);
+                out.write(System.lineSeparator());
+                //the answers below go to System.out directly
+                out.flush();
+                //process the strings with the table driven form of the same dfa
+                CompiledDFA matcher = dfa.compile();
+                while (scan.hasNext()) {
+                    boolean accepts = matcher.accepts(scan.nextLine());
+                    System.out.println(accepts ? "yes" : "no");
+                }
+            }
+            scan.close();
+        } else {
+            System.err.println(file + " does not exists - please check the file path");
+        }
+    }
 
-            //the second line is the start state
-            String startStateName = scan.nextLine().trim();
-            nfa.addStartState(startStateName);
+    /**
+     * Reads the four lines that describe the NFA, leaving the scanner
+     * at the first string to test. A transition is either three characters,
+     * as in "a0b", or from,symbol,to for longer state names. The symbol may
+     * then be a range such as a-z or 0-9 and any character of the file, which
+     * is read as UTF-8.
+     *
+     * @param scan scanner over the input file
+     * @return the NFA
+     */
+    private static NFA readNFA(Scanner scan) {
+        //create a NFA instance
+        NFA nfa = new NFA();
+        //the first line is the set of final states
+        //get the string of the final states and split it on a space
+        String finalStates = scan.nextLine().trim();
+        //using tokenizer to split the string
+        StringTokenizer tk = new StringTokenizer(finalStates, " ");
+        while (tk.hasMoreTokens()) {
+            nfa.addFinalState(tk.nextToken());
+        }
 
-            //get the string of other states and split in on space too
-            String otherStates = scan.nextLine().trim();
-            tk = new StringTokenizer(otherStates, " ");
-            while (tk.hasMoreTokens()) {
-                nfa.addState(tk.nextToken());
-            }
+        //the second line is the start state
+        String startStateName = scan.nextLine().trim();
+        nfa.addStartState(startStateName);
+
+        //get the string of other states and split in on space too
+        String otherStates = scan.nextLine().trim();
+        tk = new StringTokenizer(otherStates, " ");
+        while (tk.hasMoreTokens()) {
+            nfa.addState(tk.nextToken());
+        }
 
-            //read in the transactions
-            String trans = scan.nextLine();
-            tk = new StringTokenizer(trans, " ");
-            while (tk.hasMoreTokens()) {
-                char[] tran = tk.nextToken().toCharArray();
+        //read in the transactions
+        String trans = scan.nextLine();
+        tk = new StringTokenizer(trans, " ");
+        while (tk.hasMoreTokens()) {
+            String token = tk.nextToken();
+            if (token.length() == 3) {
+                char[] tran = token.toCharArray();
                 nfa.addTransition(String.valueOf(tran[0]), tran[1], String.valueOf(tran[2]));
+            } else {
+                addTransitions(nfa, token);
             }
-            DFA dfa = nfa.getDFA();
-            //print out dfa in the specified format.
-            System.out.println(dfa);
-            //now call the method again and process the strings
-            dfa = nfa.getDFA();
-            while (scan.hasNext()) {
-                boolean accepts = dfa.accepts(scan.nextLine());
-                System.out.println(accepts ? "yes" : "no");
-            }
-            scan.close();
+        }
+        return nfa;
+    }
+
+    /**
+     * @param nfa   the NFA being read
+     * @param token a transition written as from,symbol,to or from,first-last,to
+     */
+    private static void addTransitions(NFA nfa, String token) {
+        String[] tran = token.split(",", -1);
+        if (tran.length != 3 || tran[0].isEmpty() || tran[2].isEmpty()) {
+            badTransition(token);
+        }
+        String sym = tran[1];
+        if (sym.length() == 1) {
+            nfa.addTransition(tran[0], sym.charAt(0), tran[2]);
+        } else if (sym.length() == 3 && sym.charAt(1) == '-' && sym.charAt(0) <= sym.charAt(2)) {
+            nfa.addTransitions(tran[0], sym.charAt(0), sym.charAt(2), tran[2]);
         } else {
-            System.err.println(file + " does not exists - please check the file path");
+            badTransition(token);
         }
     }
 
+    private static void badTransition(String token) {
+        System.err.println("malformed transition " + token + ", expected from,symbol,to or from,first-last,to");
+        System.exit(2);
+    }
+
 }
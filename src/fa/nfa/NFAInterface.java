@@ -14,6 +14,15 @@ public interface NFAInterface extends FAInterface {
      */
     public abstract DFA getDFA();
 
+    /**
+     * Simulates the NFA on input s without building the equivalent DFA.
+     * As for DFAs the string "e" stands for the empty string.
+     *
+     * @param s - the input string
+     * @return true if s in the language of the NFA and false otherwise
+     */
+    public abstract boolean accepts(String s);
+
     /**
      * Return delta entries
      *
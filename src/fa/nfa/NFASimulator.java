@@ -0,0 +1,113 @@
+package fa.nfa;
+
+import fa.FAListener;
+
+import java.util.BitSet;
+
+/**
+ * Thompson style simulation of an NFA. The set of active states is a bit set
+ * and every transition is stored together with the eClosure of its targets, so
+ * one step is a union of one precomputed set per active state. Two sets are
+ * swapped between steps and nothing is allocated per character, which keeps a
+ * run at O(n m) for n states and m characters. NFAs small enough for
+ * BitParallelNFA are handed to it instead.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+final class NFASimulator {
+    private final TransitionTable table;
+    //step[id][cls] is the eClosure of the targets of the state on the symbol class, null if none
+    private final BitSet[][] step;
+    //the bit parallel simulation or null if the NFA is too large for it
+    private final BitParallelNFA bits;
+
+    /**
+     * @param table the NFA to simulate
+     */
+    NFASimulator(TransitionTable table) {
+        this.table = table;
+        int n = table.states.length;
+        step = new BitSet[n][table.classes];
+        for (int id = 0; id < n; id++) {
+            for (int cls = 0; cls < table.classes; cls++) {
+                if (table.delta[id][cls] != null) {
+                    step[id][cls] = table.closures.closureOf(table.delta[id][cls]);
+                }
+            }
+        }
+        bits = BitParallelNFA.fits(table) ? new BitParallelNFA(table, step) : null;
+    }
+
+    /**
+     * @param s        the input string, the single character string "e" stands for the empty string
+     * @param listener told how many characters were read, may be null
+     * @return true if the NFA accepts s
+     */
+    boolean accepts(CharSequence s, FAListener listener) {
+        int len = s.length() == 1 && s.charAt(0) == 'e' ? 0 : s.length();
+        return run(table.closures.closure(table.start), s, 0, len, listener);
+    }
+
+    /**
+     * @param from the set of states to start in, it is not modified
+     * @param s    the input
+     * @param pos  index of the first character to read
+     * @param len  index after the last character to read
+     * @return true if a final state is active after reading the characters
+     */
+    boolean run(BitSet from, CharSequence s, int pos, int len) {
+        return run(from, s, pos, len, null);
+    }
+
+    /**
+     * @param from     the set of states to start in, it is not modified
+     * @param s        the input
+     * @param pos      index of the first character to read
+     * @param len      index after the last character to read
+     * @param listener told how many characters were read, may be null
+     * @return true if a final state is active after reading the characters
+     */
+    private boolean run(BitSet from, CharSequence s, int pos, int len, FAListener listener) {
+        if (bits != null) {
+            return bits.run(from, s, pos, len, listener);
+        }
+        int n = table.states.length;
+        BitSet curr = new BitSet(n);
+        BitSet next = new BitSet(n);
+        curr.or(from);
+        for (int i = pos; i < len; i++) {
+            int cls = table.classIndex(s.charAt(i));
+            if (cls < 0) {
+                return matched(listener, i + 1 - pos, false);
+            }
+            next.clear();
+            for (int id = curr.nextSetBit(0); id >= 0; id = curr.nextSetBit(id + 1)) {
+                if (step[id][cls] != null) {
+                    next.or(step[id][cls]);
+                }
+            }
+            //swap the buffers
+            BitSet tmp = curr;
+            curr = next;
+            next = tmp;
+            if (curr.isEmpty()) {
+                return matched(listener, i + 1 - pos, false);
+            }
+        }
+        return matched(listener, len - pos, curr.intersects(table.finals));
+    }
+
+    /**
+     * @param listener told the result, may be null
+     * @param steps    characters read
+     * @param accepted whether the input was accepted
+     * @return accepted
+     */
+    static boolean matched(FAListener listener, int steps, boolean accepted) {
+        if (listener != null) {
+            listener.matched(steps, accepted);
+        }
+        return accepted;
+    }
+}
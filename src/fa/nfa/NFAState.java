@@ -11,20 +11,57 @@ import java.util.*;
 public class NFAState extends State {
     //instance variables
     private final Map<String, Set<NFAState>> transitions;
+    //transitions on ranges of symbols, kept as intervals rather than one entry per symbol
+    private final List<Range> ranges;
+    //dense index of this state within its NFA, -1 until the NFA assigns one
+    private int id;
 
     /**
      * Basic Constructor
      */
     public NFAState(String name) {
         this.transitions = new LinkedHashMap<>();
+        this.ranges = new ArrayList<>(0);
         super.name = name;
+        this.id = -1;
     }
 
     /**
-     * @return the States transitions or null if they are absent
+     * @return the dense index of this state within its NFA
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @param id the dense index assigned by the owning NFA
+     */
+    void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the States transitions or null if they are absent, the targets
+     * of ranges holding the symbol included
      */
     public Set<NFAState> getTransitions(String s) {
-        return this.transitions.get(s);
+        Set<NFAState> ret = this.transitions.get(s);
+        if (ranges.isEmpty() || s.length() != 1) {
+            return ret;
+        }
+        char c = s.charAt(0);
+        boolean copied = false;
+        for (Range r : ranges) {
+            if (r.first <= c && c <= r.last) {
+                //the set of the symbol itself is not changed
+                if (!copied) {
+                    ret = ret == null ? new HashSet<>() : new HashSet<>(ret);
+                    copied = true;
+                }
+                ret.add(r.to);
+            }
+        }
+        return ret;
     }
 
     /**
@@ -42,6 +79,44 @@ public class NFAState extends State {
         }
     }
 
+    /**
+     * @param first first symbol of the range
+     * @param last  last symbol of the range, inclusive
+     * @param state the state we transition to on every symbol of the range
+     */
+    void addRange(char first, char last, NFAState state) {
+        ranges.add(new Range(first, last, state));
+    }
+
+    /**
+     * @return the transitions on single symbols by symbol, without the ranges
+     */
+    Map<String, Set<NFAState>> symbolTransitions() {
+        return transitions;
+    }
+
+    /**
+     * @return the transitions on ranges of symbols in the order they were added
+     */
+    List<Range> ranges() {
+        return ranges;
+    }
+
+    /**
+     * A transition on every symbol from first to last
+     */
+    static final class Range {
+        final char first;
+        final char last;
+        final NFAState to;
+
+        private Range(char first, char last, NFAState to) {
+            this.first = first;
+            this.last = last;
+            this.to = to;
+        }
+    }
+
     /**
      * Comparison method for NFAStates
      *
@@ -0,0 +1,526 @@
+package fa.nfa;
+
+import fa.ConstructionStats;
+import fa.dfa.DFA;
+import fa.dfa.DFAState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Subset construction over a TransitionTable. Each DFA state is a BitSet
+ * of NFA state ids deduplicated through a hash map. The DFA state names
+ * are not stored, each is built from its subset when it is asked for.
+ * <p>
+ * The construction can be kept after build and brought up to date when
+ * symbol transitions or final states are added to the NFA. Only the subsets
+ * holding a state that gained transitions are explored again, together with
+ * the new subsets they lead to, and the rows of all other subsets are carried
+ * over to the symbol classes of the new table.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+final class SubsetConstruction {
+    private TransitionTable table;
+    //dfa state id of every subset discovered so far
+    private Map<BitSet, Integer> ids;
+    //subsets in the order they were discovered
+    private List<BitSet> subsets;
+    //moves.get(i)[cls] is the dfa state id subset i goes to on the symbols of the class
+    private List<int[]> moves;
+    //eClosure of the target sets seen so far, different subsets often move to the same targets,
+    //shared by the workers of a parallel build
+    private final Map<BitSet, BitSet> closed;
+    //metrics of the last build or update, see stats
+    private int explored;
+    private int highWater;
+    private long hits;
+    private long misses;
+    private long exploreNanos;
+    private long emitNanos;
+    //limits of the construction, and where it stands against them
+    private final DeterminizationBudget budget;
+    private long started;
+    private long deadline;
+    private long bytes;
+    //part of bytes charged for the entries of closed, which outlive a single build
+    private long closedBytes;
+
+    /**
+     * @param table the NFA to determinize
+     */
+    SubsetConstruction(TransitionTable table) {
+        this(table, DeterminizationBudget.UNLIMITED);
+    }
+
+    /**
+     * @param table  the NFA to determinize
+     * @param budget limits on the construction, checked by build and update
+     */
+    SubsetConstruction(TransitionTable table, DeterminizationBudget budget) {
+        this.table = table;
+        this.budget = budget;
+        this.ids = new HashMap<>();
+        this.subsets = new ArrayList<>();
+        this.moves = new ArrayList<>();
+        this.closed = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return the DFA equivalent to the NFA of the table
+     */
+    DFA build() {
+        long t = resetStats();
+        idOf(table.closures.closure(table.start));
+        explore(0);
+        return emit(t);
+    }
+
+    /**
+     * Same as build, but every level of the breadth first search is expanded
+     * by the workers of the pool. The workers compute the moves of the subsets
+     * of the level and look up the ones already known, then the new subsets
+     * are numbered by one thread in the order the serial search finds them,
+     * so the DFA is the same as the one build returns.
+     *
+     * @param pool the pool expanding the levels
+     * @return the DFA equivalent to the NFA of the table
+     */
+    DFA build(ForkJoinPool pool) {
+        long t = resetStats();
+        idOf(table.closures.closure(table.start));
+        LongAdder hitCount = new LongAdder();
+        LongAdder missCount = new LongAdder();
+        LongAdder closedCharge = new LongAdder();
+        for (int level = 0; level < subsets.size(); ) {
+            int end = subsets.size();
+            int[][] rows = new int[end - level][];
+            BitSet[][] found = new BitSet[end - level][];
+            int grain = Math.max(1, (end - level) / (pool.getParallelism() * 8));
+            pool.invoke(new Expand(level, level, end, grain, rows, found, hitCount, missCount, closedCharge));
+            //the workers only count what they added to closed, the limit is checked here
+            chargeClosed(closedCharge.sumThenReset());
+            for (int i = level; i < end; i++) {
+                int[] row = rows[i - level];
+                for (int cls = 0; cls < row.length; cls++) {
+                    if (row[cls] < 0) {
+                        row[cls] = idOf(found[i - level][cls]);
+                    }
+                }
+                moves.add(row);
+                queued(subsets.size() - i - 1);
+            }
+            level = end;
+        }
+        hits = hitCount.sum();
+        misses = missCount.sum();
+        return emit(t);
+    }
+
+    /**
+     * Computes the rows of a range of subsets of one level. Known subsets
+     * are resolved to their ids, a new one is left as -1 with its set in
+     * found. The subset lists and id map are only read while the level is
+     * expanded.
+     */
+    private final class Expand extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int level;
+        private final int lo;
+        private final int hi;
+        private final int grain;
+        private final int[][] rows;
+        private final BitSet[][] found;
+        private final LongAdder hitCount;
+        private final LongAdder missCount;
+        private final LongAdder closedCharge;
+
+        private Expand(int level, int lo, int hi, int grain, int[][] rows, BitSet[][] found,
+                       LongAdder hitCount, LongAdder missCount, LongAdder closedCharge) {
+            this.level = level;
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+            this.rows = rows;
+            this.found = found;
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.closedCharge = closedCharge;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > grain) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Expand(level, lo, mid, grain, rows, found, hitCount, missCount, closedCharge),
+                        new Expand(level, mid, hi, grain, rows, found, hitCount, missCount, closedCharge));
+                return;
+            }
+            for (int i = lo; i < hi; i++) {
+                BitSet set = subsets.get(i);
+                int[] row = new int[table.classes];
+                BitSet[] sets = new BitSet[table.classes];
+                for (int cls = 0; cls < row.length; cls++) {
+                    BitSet targets = table.targets(set, cls);
+                    BitSet to = closed.get(targets);
+                    if (to == null) {
+                        missCount.increment();
+                        to = table.closures.closureOf(targets);
+                        if (closed.putIfAbsent(targets, to) == null) {
+                            closedCharge.add(closedEntry(targets, to));
+                        }
+                    } else {
+                        hitCount.increment();
+                    }
+                    Integer id = ids.get(to);
+                    row[cls] = id == null ? -1 : id;
+                    sets[cls] = to;
+                }
+                rows[i - level] = row;
+                found[i - level] = sets;
+            }
+        }
+    }
+
+    /**
+     * Explores the subsets without building a DFA object, for callers that
+     * read the subsets and moves directly
+     */
+    void explore() {
+        long t = resetStats();
+        idOf(table.closures.closure(table.start));
+        explore(0);
+        exploreNanos = System.nanoTime() - t;
+    }
+
+    /**
+     * @return the subsets in the order they were discovered, subset 0 holds the start state
+     */
+    List<BitSet> subsets() {
+        return subsets;
+    }
+
+    /**
+     * @return moves().get(i)[cls] is the index of the subset subset i goes to on the symbol class
+     */
+    List<int[]> moves() {
+        return moves;
+    }
+
+    /**
+     * Brings the construction up to date with a newer snapshot of the same NFA.
+     * The newer snapshot may only add states, symbol transitions and final
+     * states, a new empty transition or start state needs a new construction.
+     *
+     * @param next    the table of the NFA after the changes
+     * @param changed ids of the states that gained symbol transitions
+     * @return the DFA equivalent to the NFA of the new table
+     */
+    DFA update(TransitionTable next, BitSet changed) {
+        long t = resetStats();
+        TransitionTable prev = table;
+        table = next;
+        //old class of a symbol in each new class, -1 if the class only holds new symbols;
+        //cuts are never taken away, so every new interval lies within one old interval or outside them all
+        int[] prevClass = new int[next.classes];
+        Arrays.fill(prevClass, -1);
+        for (int i = 0; i < next.first.length; i++) {
+            int cls = next.intervalClass[i];
+            prevClass[cls] = Math.max(prevClass[cls], prev.classIndex(next.first[i]));
+        }
+        //a subset without changed states moves the same way as before on every symbol,
+        //and symbols sharing a new class shared their targets from its states before
+        int n = subsets.size();
+        List<int[]> prevMoves = moves;
+        moves = new ArrayList<>(n);
+        BitSet stale = new BitSet(n);
+        int empty = -1;
+        for (int i = 0; i < n; i++) {
+            if (subsets.get(i).intersects(changed)) {
+                stale.set(i);
+                moves.add(null);
+                continue;
+            }
+            int[] row = new int[next.classes];
+            for (int cls = 0; cls < row.length; cls++) {
+                if (prevClass[cls] >= 0) {
+                    row[cls] = prevMoves.get(i)[prevClass[cls]];
+                } else {
+                    //nothing moved on a symbol that was not in the alphabet
+                    if (empty < 0) {
+                        empty = idOf(new BitSet());
+                    }
+                    row[cls] = empty;
+                }
+            }
+            moves.add(row);
+        }
+        int left = stale.cardinality();
+        for (int i = stale.nextSetBit(0); i >= 0; i = stale.nextSetBit(i + 1)) {
+            moves.set(i, row(subsets.get(i)));
+            queued(--left + subsets.size() - n);
+        }
+        //subsets found by the stale rows are explored as in a full construction
+        explore(n);
+        prune();
+        return emit(t);
+    }
+
+    /**
+     * @param incremental true if the last call was an update
+     * @param tableNanos  time it took to build the table
+     * @param dfa         the DFA the last call returned
+     * @return the metrics of the last build or update
+     */
+    ConstructionStats stats(boolean incremental, long tableNanos, DFA dfa) {
+        long transitions = (long) dfa.getStates().size() * table.symbols.length;
+        return new ConstructionStats(incremental, explored, highWater, hits, misses,
+                dfa.getStates().size(), transitions, tableNanos, exploreNanos, emitNanos);
+    }
+
+    /**
+     * @return the time the exploration starts
+     */
+    private long resetStats() {
+        //charge what an earlier build left behind as it is now, pruned subsets are no longer held
+        bytes = closedBytes;
+        for (BitSet set : subsets) {
+            bytes += estimate(set);
+        }
+        explored = 0;
+        highWater = 0;
+        hits = 0;
+        misses = 0;
+        started = System.nanoTime();
+        deadline = budget.deadline(started);
+        return started;
+    }
+
+    /**
+     * @param pending number of subsets waiting for their transitions
+     */
+    private void queued(int pending) {
+        explored++;
+        highWater = Math.max(highWater, pending);
+        if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+            throw exceeded(BudgetExceededException.Limit.TIME);
+        }
+    }
+
+    /**
+     * Rough footprint of one DFA state: the subset with its hash map entry,
+     * its row of moves, the source of its name and the transitions of the DFA
+     * state, one per interval of the alphabet
+     *
+     * @param set a subset of NFA state ids
+     * @return estimated bytes the subset costs
+     */
+    private long estimate(BitSet set) {
+        long subset = 48 + bitSetBytes(set);
+        long row = 16 + 4L * table.classes;
+        long name = 24;
+        long state = 64 + 48L * table.first.length;
+        return subset + row + name + state;
+    }
+
+    /**
+     * @param targets a key of closed
+     * @param to      its value
+     * @return estimated bytes the entry costs
+     */
+    private static long closedEntry(BitSet targets, BitSet to) {
+        return 48 + bitSetBytes(targets) + bitSetBytes(to);
+    }
+
+    /**
+     * @param set a set
+     * @return bytes of the set and the words it has allocated, which may be more than it uses
+     */
+    private static long bitSetBytes(BitSet set) {
+        return 40 + (set.size() >>> 3);
+    }
+
+    /**
+     * @param charge bytes added to closed
+     */
+    private void chargeClosed(long charge) {
+        closedBytes += charge;
+        bytes += charge;
+        if (bytes > budget.getMaxBytes()) {
+            throw exceeded(BudgetExceededException.Limit.MEMORY);
+        }
+    }
+
+    /**
+     * @param limit the limit that was hit
+     * @return the exception that stops the construction
+     */
+    private BudgetExceededException exceeded(BudgetExceededException.Limit limit) {
+        return new BudgetExceededException(limit, subsets.size(), explored, bytes, System.nanoTime() - started);
+    }
+
+    /**
+     * @param start the time the exploration started
+     * @return the DFA of the subsets explored
+     */
+    private DFA emit(long start) {
+        long t = System.nanoTime();
+        exploreNanos = t - start;
+        DFA dfa = toDFA();
+        emitNanos = System.nanoTime() - t;
+        return dfa;
+    }
+
+    /**
+     * Breadth first search over the subsets reachable from the ones already
+     * discovered. The subset list doubles as the queue since subsets are
+     * explored in the same order they are discovered.
+     *
+     * @param from index of the first subset without a row
+     */
+    private void explore(int from) {
+        for (int i = from; i < subsets.size(); i++) {
+            moves.add(row(subsets.get(i)));
+            queued(subsets.size() - i - 1);
+        }
+    }
+
+    /**
+     * @param set a subset of NFA state ids
+     * @return the dfa state ids the subset moves to on every symbol class
+     */
+    private int[] row(BitSet set) {
+        int[] row = new int[table.classes];
+        for (int cls = 0; cls < row.length; cls++) {
+            row[cls] = idOf(move(set, cls));
+        }
+        return row;
+    }
+
+    /**
+     * Drops the subsets that are no longer reachable and numbers the rest in
+     * the order a full construction would discover them
+     */
+    private void prune() {
+        int[] renumber = new int[subsets.size()];
+        Arrays.fill(renumber, -1);
+        List<Integer> order = new ArrayList<>(subsets.size());
+        renumber[0] = 0;
+        order.add(0);
+        for (int i = 0; i < order.size(); i++) {
+            for (int to : moves.get(order.get(i))) {
+                if (renumber[to] < 0) {
+                    renumber[to] = order.size();
+                    order.add(to);
+                }
+            }
+        }
+        Map<BitSet, Integer> keptIds = new HashMap<>();
+        List<BitSet> keptSubsets = new ArrayList<>(order.size());
+        List<int[]> keptMoves = new ArrayList<>(order.size());
+        for (int old : order) {
+            int[] row = moves.get(old);
+            for (int cls = 0; cls < row.length; cls++) {
+                row[cls] = renumber[row[cls]];
+            }
+            keptIds.put(subsets.get(old), keptSubsets.size());
+            keptSubsets.add(subsets.get(old));
+            keptMoves.add(row);
+        }
+        ids = keptIds;
+        subsets = keptSubsets;
+        moves = keptMoves;
+    }
+
+    /**
+     * @param set a subset of NFA state ids
+     * @param cls a symbol class of the table
+     * @return the eClosure of the states reachable from set on the symbols of the class
+     */
+    private BitSet move(BitSet set, int cls) {
+        BitSet targets = table.targets(set, cls);
+        BitSet ret = closed.get(targets);
+        if (ret == null) {
+            misses++;
+            ret = table.closures.closureOf(targets);
+            closed.put(targets, ret);
+            chargeClosed(closedEntry(targets, ret));
+        } else {
+            hits++;
+        }
+        return ret;
+    }
+
+    /**
+     * @param set a subset of NFA state ids
+     * @return the dfa state id of the subset, adding it to the queue if it is new
+     */
+    private int idOf(BitSet set) {
+        Integer id = ids.get(set);
+        if (id == null) {
+            id = subsets.size();
+            if (id >= budget.getMaxStates()) {
+                throw exceeded(BudgetExceededException.Limit.STATES);
+            }
+            bytes += estimate(set);
+            if (bytes > budget.getMaxBytes()) {
+                throw exceeded(BudgetExceededException.Limit.MEMORY);
+            }
+            ids.put(set, id);
+            subsets.add(set);
+        }
+        return id;
+    }
+
+    /**
+     * @return a DFA with a state named after every subset explored, the
+     * names are built from the subsets when they are asked for
+     */
+    private DFA toDFA() {
+        DFA dfa = new DFA(subsets.size());
+        DFAState[] states = new DFAState[subsets.size()];
+        //the names of this DFA keep coming from the table it was built from
+        TransitionTable names = table;
+        for (int i = 0; i < states.length; i++) {
+            BitSet set = subsets.get(i);
+            boolean isFinal = set.intersects(table.finals);
+            if (i == 0) {
+                //a start state that is also final is created as final first
+                String name = names.nameOf(set);
+                if (isFinal) {
+                    dfa.addFinalState(name);
+                }
+                dfa.addStartState(name);
+                states[i] = dfa.getStartState();
+            } else {
+                states[i] = new DFAState(() -> names.nameOf(set), isFinal);
+                dfa.addState(states[i]);
+            }
+        }
+        //the alphabet goes in first so it keeps the order of the NFA
+        for (char c : table.symbols) {
+            dfa.addSymbol(c);
+        }
+        for (int i = 0; i < states.length; i++) {
+            int[] row = moves.get(i);
+            for (int k = 0; k < table.first.length; k++) {
+                DFAState to = states[row[table.intervalClass[k]]];
+                if (table.first[k] == table.last[k]) {
+                    dfa.addTransition(states[i], table.first[k], to);
+                } else {
+                    dfa.addTransitions(states[i], table.first[k], table.last[k], to);
+                }
+            }
+        }
+        return dfa;
+    }
+}
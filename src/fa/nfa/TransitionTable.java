@@ -0,0 +1,317 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Integer indexed snapshot of an NFA. Every state is addressed by its
+ * dense id and every set of states is a BitSet over those ids, so the
+ * algorithms working on the table never compare or build state names.
+ * The alphabet is cut into intervals at every symbol where a transition or
+ * a range of the alphabet starts or ends, so every state treats all the
+ * symbols of an interval the same way. Intervals with the same targets from
+ * every state share one symbol class and one column of the table, so a
+ * wide alphabet made of a few ranges only costs a few intervals and columns,
+ * however many symbols the ranges hold.
+ *
+ * @author JustinRaver, NickStolarow
+ * @version 1.0
+ */
+final class TransitionTable {
+    //code points below this are classified by a direct lookup
+    private static final int LOW = 256;
+
+    //states indexed by their id
+    final NFAState[] states;
+    //the alphabet without the empty symbol, in the order it was added to the NFA
+    final char[] symbols;
+    //interval i runs from first[i] to last[i] and its symbols are in class intervalClass[i],
+    //the intervals are sorted and only cover symbols of the alphabet
+    final char[] first;
+    final char[] last;
+    final int[] intervalClass;
+    //number of symbol classes
+    final int classes;
+    //lowClass[c] is the class of c below LOW or -1 if c is not in the alphabet
+    private final int[] lowClass;
+    //delta[id][class] is the set of target ids or null if there is no transition
+    final BitSet[][] delta;
+    //eClosure of every state
+    final ClosureIndex closures;
+    //ids of the final states
+    final BitSet finals;
+    //id of the start state
+    final int start;
+    //rank[id] is the position of the state when all states are ordered by name
+    private final int[] rank;
+    //byRank[r] is the id of the state with rank r
+    private final int[] byRank;
+
+    /**
+     * @param all         the states of the NFA, each carrying its dense id
+     * @param alphabet    the alphabet of the NFA as ranges {first, last} in the order they
+     *                    were added, possibly holding the range of 'e' alone
+     * @param startState  the start state of the NFA
+     * @param finalStates the final states of the NFA
+     * @param closures    the eClosure of every state of the NFA
+     */
+    TransitionTable(Collection<NFAState> all, List<char[]> alphabet,
+                    NFAState startState, Collection<NFAState> finalStates, ClosureIndex closures) {
+        int n = all.size();
+        states = new NFAState[n];
+        for (NFAState s : all) {
+            states[s.getId()] = s;
+        }
+
+        //copy the alphabet in order skipping the empty transition and repeated symbols,
+        //and cut it wherever one of its ranges starts or ends
+        BitSet member = new BitSet();
+        StringBuilder abc = new StringBuilder();
+        IntList bounds = new IntList();
+        for (char[] range : alphabet) {
+            for (int c = member.nextClearBit(range[0]); c <= range[1]; c = member.nextClearBit(c + 1)) {
+                if (c != 'e') {
+                    abc.append((char) c);
+                }
+            }
+            member.set(range[0], range[1] + 1);
+            bounds.add(range[0]);
+            bounds.add(range[1] + 1);
+        }
+        symbols = abc.toString().toCharArray();
+        //and wherever a transition starts or ends
+        for (NFAState s : states) {
+            for (String sym : s.symbolTransitions().keySet()) {
+                bounds.add(sym.charAt(0));
+                bounds.add(sym.charAt(0) + 1);
+            }
+            for (NFAState.Range r : s.ranges()) {
+                bounds.add(r.first);
+                bounds.add(r.last + 1);
+            }
+        }
+        int[] cuts = bounds.sortedDistinct();
+        IntList starts = new IntList();
+        IntList ends = new IntList();
+        for (int i = 0; i + 1 < cuts.length; i++) {
+            //every symbol between two cuts is in the alphabet or none is
+            if (member.get(cuts[i]) && cuts[i] != 'e') {
+                starts.add(cuts[i]);
+                ends.add(cuts[i + 1] - 1);
+            }
+        }
+        int intervals = starts.size();
+        first = new char[intervals];
+        last = new char[intervals];
+        for (int i = 0; i < intervals; i++) {
+            first[i] = (char) starts.get(i);
+            last[i] = (char) ends.get(i);
+        }
+
+        //column[i][id] are the targets of state id on the symbols of interval i
+        BitSet[][] column = new BitSet[intervals][n];
+        for (NFAState s : states) {
+            int id = s.getId();
+            for (Map.Entry<String, Set<NFAState>> e : s.symbolTransitions().entrySet()) {
+                char c = e.getKey().charAt(0);
+                if (c != 'e' && !e.getValue().isEmpty()) {
+                    BitSet to = targetsOf(column, intervalOf(c), id);
+                    for (NFAState t : e.getValue()) {
+                        to.set(t.getId());
+                    }
+                }
+            }
+            for (NFAState.Range r : s.ranges()) {
+                for (int i = intervalOf(r.first); i < intervals && first[i] <= r.last; i++) {
+                    targetsOf(column, i, id).set(r.to.getId());
+                }
+            }
+        }
+
+        //intervals with the same targets from every state share a class, numbered in the
+        //order of the alphabet so the subset construction meets its subsets in that order;
+        //the ranges of the alphabet are cut too, so each interval lies within a range or outside it
+        intervalClass = new int[intervals];
+        Arrays.fill(intervalClass, -1);
+        Map<List<BitSet>, Integer> columns = new HashMap<>();
+        List<BitSet[]> deltaByClass = new ArrayList<>();
+        for (char[] range : alphabet) {
+            for (int i = intervalOf(range[0]); i < intervals && first[i] <= range[1]; i++) {
+                if (intervalClass[i] >= 0) {
+                    continue;
+                }
+                Integer cls = columns.get(Arrays.asList(column[i]));
+                if (cls == null) {
+                    cls = deltaByClass.size();
+                    columns.put(Arrays.asList(column[i]), cls);
+                    deltaByClass.add(column[i]);
+                }
+                intervalClass[i] = cls;
+            }
+        }
+        classes = deltaByClass.size();
+        delta = new BitSet[n][classes];
+        for (int cls = 0; cls < classes; cls++) {
+            BitSet[] col = deltaByClass.get(cls);
+            for (int id = 0; id < n; id++) {
+                delta[id][cls] = col[id];
+            }
+        }
+
+        lowClass = new int[LOW];
+        Arrays.fill(lowClass, -1);
+        for (int i = 0; i < intervals && first[i] < LOW; i++) {
+            for (int c = first[i]; c <= last[i] && c < LOW; c++) {
+                lowClass[c] = intervalClass[i];
+            }
+        }
+        this.closures = closures;
+
+        finals = new BitSet(n);
+        for (NFAState s : finalStates) {
+            finals.set(s.getId());
+        }
+        start = startState.getId();
+
+        //order the ids by name so set names come out the same as a name sorted set
+        Integer[] sorted = new Integer[n];
+        for (int id = 0; id < n; id++) {
+            sorted[id] = id;
+        }
+        Arrays.sort(sorted, Comparator.comparing(id -> states[id].toString()));
+        rank = new int[n];
+        byRank = new int[n];
+        for (int r = 0; r < n; r++) {
+            byRank[r] = sorted[r];
+            rank[sorted[r]] = r;
+        }
+    }
+
+    /**
+     * @param c a character
+     * @return the symbol class of c or -1 if c is not in the alphabet
+     */
+    int classIndex(char c) {
+        if (c < LOW) {
+            return lowClass[c];
+        }
+        int i = intervalOf(c);
+        return i < first.length && first[i] <= c && c <= last[i] ? intervalClass[i] : -1;
+    }
+
+    /**
+     * @param c a character
+     * @return the interval holding c if there is one, otherwise the first interval after c
+     */
+    private int intervalOf(char c) {
+        int lo = 0;
+        int hi = first.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (last[mid] < c) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @param set a set of state ids
+     * @param cls a symbol class
+     * @return the ids reachable from set on the symbols of the class, without their eClosure
+     */
+    BitSet targets(BitSet set, int cls) {
+        //sets only grow to their highest id, a full size set per move costs n squared bits
+        BitSet ret = new BitSet();
+        for (int id = set.nextSetBit(0); id >= 0; id = set.nextSetBit(id + 1)) {
+            if (delta[id][cls] != null) {
+                ret.or(delta[id][cls]);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param set a set of state ids
+     * @return name of the set in the form [a, b, c] with the states ordered by name
+     */
+    String nameOf(BitSet set) {
+        int[] ranks = new int[set.cardinality()];
+        int i = 0;
+        for (int id = set.nextSetBit(0); id >= 0; id = set.nextSetBit(id + 1)) {
+            ranks[i++] = rank[id];
+        }
+        Arrays.sort(ranks);
+        StringBuilder name = new StringBuilder();
+        name.append('[');
+        for (i = 0; i < ranks.length; i++) {
+            if (i > 0) {
+                name.append(", ");
+            }
+            name.append(states[byRank[ranks[i]]]);
+        }
+        name.append(']');
+        return name.toString();
+    }
+
+    /**
+     * @param column column[i][id] are the targets of state id on interval i, null for none yet
+     * @param i      an interval
+     * @param id     a state id
+     * @return the targets of the state on the interval, created empty if there were none
+     */
+    private static BitSet targetsOf(BitSet[][] column, int i, int id) {
+        if (column[i][id] == null) {
+            //sets only grow to their highest id
+            column[i][id] = new BitSet();
+        }
+        return column[i][id];
+    }
+
+    /**
+     * Growable list of ints, so the cuts of a wide alphabet are not boxed
+     */
+    private static final class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int i) {
+            return values[i];
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return the values in increasing order without repeats
+         */
+        int[] sortedDistinct() {
+            int[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int k = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (k == 0 || sorted[k - 1] != sorted[i]) {
+                    sorted[k++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, k);
+        }
+    }
+}